@@ -2,6 +2,9 @@ package com.jmunoz.aggregator.advice;
 
 import com.jmunoz.aggregator.exceptions.CustomerNotFoundException;
 import com.jmunoz.aggregator.exceptions.InvalidTradeRequestException;
+import com.jmunoz.aggregator.exceptions.OrderNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -13,8 +16,40 @@ import java.util.function.Consumer;
 @ControllerAdvice
 public class ApplicationExceptionHandler {
 
+    private static final Logger log = LoggerFactory.getLogger(ApplicationExceptionHandler.class);
+
     @ExceptionHandler(CustomerNotFoundException.class)
     public ProblemDetail handleException(CustomerNotFoundException ex) {
+        return customerNotFound(ex);
+    }
+
+    @ExceptionHandler(OrderNotFoundException.class)
+    public ProblemDetail handleException(OrderNotFoundException ex) {
+        return orderNotFound(ex);
+    }
+
+    @ExceptionHandler(InvalidTradeRequestException.class)
+    public ProblemDetail handleException(InvalidTradeRequestException ex) {
+        return invalidTradeRequest(ex);
+    }
+
+    // Para los errores que no pasan por @ExceptionHandler, como el de cada trade de un batch
+    // (la respuesta ya ha empezado y cada trade lleva su propio error).
+    // El mensaje de un error inesperado puede llevar detalles internos (URLs de los servicios, errores de Netty...),
+    // así que solo va al log. El cliente recibe un detalle genérico.
+    public static ProblemDetail toProblemDetail(Throwable ex) {
+        return switch (ex) {
+            case CustomerNotFoundException e -> customerNotFound(e);
+            case OrderNotFoundException e -> orderNotFound(e);
+            case InvalidTradeRequestException e -> invalidTradeRequest(e);
+            default -> {
+                log.error("unexpected error: {}", ex.getMessage(), ex);
+                yield ProblemDetail.forStatusAndDetail(HttpStatus.INTERNAL_SERVER_ERROR, "Internal error");
+            }
+        };
+    }
+
+    private static ProblemDetail customerNotFound(CustomerNotFoundException ex) {
         return build(HttpStatus.NOT_FOUND, ex, problem -> {
             // Esta página no existe, es solo para fines demostrativos.
             problem.setType(URI.create("http://example.com/problems/customer-not-found"));
@@ -22,8 +57,15 @@ public class ApplicationExceptionHandler {
         });
     }
 
-    @ExceptionHandler(InvalidTradeRequestException.class)
-    public ProblemDetail handleException(InvalidTradeRequestException ex) {
+    private static ProblemDetail orderNotFound(OrderNotFoundException ex) {
+        return build(HttpStatus.NOT_FOUND, ex, problem -> {
+            // Esta página no existe, es solo para fines demostrativos.
+            problem.setType(URI.create("http://example.com/problems/order-not-found"));
+            problem.setTitle("Order Not Found");
+        });
+    }
+
+    private static ProblemDetail invalidTradeRequest(InvalidTradeRequestException ex) {
         return build(HttpStatus.BAD_REQUEST, ex, problem -> {
             // Esta página no existe, es solo para fines demostrativos.
             problem.setType(URI.create("http://example.com/problems/invalid-trade-request"));
@@ -31,7 +73,7 @@ public class ApplicationExceptionHandler {
         });
     }
 
-    private ProblemDetail build(HttpStatus status, Exception ex, Consumer<ProblemDetail> consumer) {
+    private static ProblemDetail build(HttpStatus status, Exception ex, Consumer<ProblemDetail> consumer) {
         var problem = ProblemDetail.forStatusAndDetail(status, ex.getMessage());
         consumer.accept(problem);
         return problem;
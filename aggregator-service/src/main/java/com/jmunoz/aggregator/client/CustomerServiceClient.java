@@ -4,14 +4,20 @@ import com.jmunoz.aggregator.dto.CustomerInformation;
 import com.jmunoz.aggregator.dto.StockTradeRequest;
 import com.jmunoz.aggregator.dto.StockTradeResponse;
 import com.jmunoz.aggregator.exceptions.ApplicationExceptions;
+import com.jmunoz.aggregator.metrics.LatencyRecorder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
 import org.springframework.http.ProblemDetail;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException.NotFound;
 import org.springframework.web.reactive.function.client.WebClientResponseException.BadRequest;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.Objects;
 
 // Aunque esto debería ser un @Component de Spring, vamos a tener una clase config donde lo expondremos como un @Bean.
@@ -19,20 +25,42 @@ public class CustomerServiceClient {
 
     private static final Logger log = LoggerFactory.getLogger(CustomerServiceClient.class);
     private final WebClient client;
+    private final HedgedRequests hedgedRequests;
+    private final LatencyRecorder customerInformationLatency;
+    private final LatencyRecorder customersInformationLatency;
+    private final LatencyRecorder tradeLatency;
 
-    public CustomerServiceClient(WebClient client) {
+    public CustomerServiceClient(WebClient client, HedgedRequests hedgedRequests, MeterRegistry meterRegistry) {
         this.client = client;
+        this.hedgedRequests = hedgedRequests;
+        this.customerInformationLatency = latency("getCustomerInformation", meterRegistry);
+        this.customersInformationLatency = latency("getCustomersInformation", meterRegistry);
+        this.tradeLatency = latency("trade", meterRegistry);
     }
 
+    // Es una lectura idempotente, así que se puede hacer hedging (si está habilitado).
     public Mono<CustomerInformation> getCustomerInformation(Integer customerId) {
-        return this.client.get()
-                .uri("/customers/{customerId}", customerId)
-                .retrieve()
-                .bodyToMono(CustomerInformation.class)
+        return this.hedgedRequests.execute(() -> this.client.get()
+                        .uri("/customers/{customerId}", customerId)
+                        .retrieve()
+                        .bodyToMono(CustomerInformation.class))
                 // En caso de error NotFound, proveemos un callback que ejecutar.
-                .onErrorResume(NotFound.class, ex -> ApplicationExceptions.customerNotFound(customerId));
+                .onErrorResume(NotFound.class, ex -> ApplicationExceptions.customerNotFound(customerId))
+                .transform(this.customerInformationLatency::record);
+    }
+
+    // Varios clientes en una sola llamada (NDJSON). Usamos POST para que los ids quepan aunque sean miles.
+    public Flux<CustomerInformation> getCustomersInformation(List<Integer> customerIds) {
+        return this.client.post()
+                .uri("/customers/search")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(customerIds)
+                .retrieve()
+                .bodyToFlux(CustomerInformation.class)
+                .transform(this.customersInformationLatency::record);
     }
 
+    // Sin hedging: repetir un trade lo ejecutaría dos veces.
     public Mono<StockTradeResponse> trade(Integer customerId, StockTradeRequest request) {
         return this.client.post()
                 .uri("/customers/{customerId}/trade", customerId)
@@ -41,7 +69,13 @@ public class CustomerServiceClient {
                 .bodyToMono(StockTradeResponse.class)
                 // En caso de error NotFound o BadRequest, proveemos un callback que ejecutar.
                 .onErrorResume(NotFound.class, ex -> ApplicationExceptions.customerNotFound(customerId))
-                .onErrorResume(BadRequest.class, this::handleException);
+                .onErrorResume(BadRequest.class, this::handleException)
+                .transform(this.tradeLatency::record);
+    }
+
+    private static LatencyRecorder latency(String method, MeterRegistry meterRegistry) {
+        return LatencyRecorder.register("aggregator.client.requests", "Latency of each downstream client call",
+                Tags.of("client", "customer-service", "method", method), meterRegistry);
     }
 
     // Aquí indicamos el mensaje que debe aparecer en caso de error BadRequest.
@@ -0,0 +1,123 @@
+package com.jmunoz.aggregator.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Hedging de peticiones de solo lectura (idempotentes).
+// Si la petición no ha respondido pasado el percentil configurado de la latencia reciente, lanzamos una segunda
+// petición igual y nos quedamos con la primera que responda. La otra se cancela.
+//
+// Para no duplicar la carga cuando el servicio va lento para todos, el número de hedges está limitado a un
+// porcentaje del tráfico: cada petición suma maxRate "tokens" (hasta MAX_TOKENS) y cada hedge gasta uno.
+//
+// ¡Nunca usar con peticiones que modifican datos (por ejemplo, un trade)!
+public class HedgedRequests {
+
+    private static final long TOKEN = 1_000;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+    private static final long DELAY_REFRESH_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private final boolean enabled;
+    private final long minDelayNanos;
+    private final long tokensPerRequest;
+    private final Timer latency;
+    private final Counter hedged;
+    private final Counter won;
+    private final Counter cancelled;
+    private final Counter throttled;
+
+    private final AtomicLong tokens = new AtomicLong();
+
+    // Leer el percentil del Timer crea un snapshot, así que lo recalculamos como mucho una vez por segundo.
+    private volatile long delayNanos;
+    private volatile long delayComputedAt = System.nanoTime() - DELAY_REFRESH_NANOS;
+
+    public HedgedRequests(String name, boolean enabled, double percentile, Duration minDelay, double maxRate,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.minDelayNanos = minDelay.toNanos();
+        this.delayNanos = this.minDelayNanos;
+        this.tokensPerRequest = Math.round(maxRate * TOKEN);
+        this.latency = Timer.builder(name + ".latency")
+                .description("Latency of each request attempt, used to compute the hedge delay")
+                .publishPercentiles(percentile)
+                .distributionStatisticExpiry(Duration.ofMinutes(1))
+                .register(meterRegistry);
+        this.hedged = this.counter(name, "hedged", meterRegistry);
+        this.won = this.counter(name, "won", meterRegistry);
+        this.cancelled = this.counter(name, "cancelled", meterRegistry);
+        this.throttled = this.counter(name, "throttled", meterRegistry);
+    }
+
+    public <T> Mono<T> execute(Supplier<Mono<T>> request) {
+        if (!this.enabled) {
+            return request.get();
+        }
+        return Mono.defer(() -> {
+            this.addToken();
+            var hedgeSent = new AtomicBoolean();
+            var primary = this.timed(request.get())
+                    .doOnCancel(() -> {
+                        if (hedgeSent.get()) {
+                            this.cancelled.increment();
+                        }
+                    });
+            // Si no hay tokens, el hedge no emite nunca (Mono.never) para no ganar a la petición principal.
+            var hedge = Mono.delay(Duration.ofNanos(this.delay()))
+                    .flatMap(t -> {
+                        if (!this.tryAcquireToken()) {
+                            this.throttled.increment();
+                            return Mono.<T>never();
+                        }
+                        hedgeSent.set(true);
+                        this.hedged.increment();
+                        return this.timed(request.get())
+                                .doOnSuccess(r -> this.won.increment())
+                                .doOnCancel(this.cancelled::increment);
+                    });
+            // El primero que emita (valor, vacío o error) gana y cancela al otro.
+            return Mono.firstWithSignal(primary, hedge);
+        });
+    }
+
+    private <T> Mono<T> timed(Mono<T> request) {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            return request.doOnSuccess(r -> this.latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private long delay() {
+        var now = System.nanoTime();
+        if (now - this.delayComputedAt >= DELAY_REFRESH_NANOS) {
+            this.delayComputedAt = now;
+            var percentiles = this.latency.takeSnapshot().percentileValues();
+            var observed = percentiles.length == 0 ? 0 : (long) percentiles[0].value(TimeUnit.NANOSECONDS);
+            this.delayNanos = Math.max(this.minDelayNanos, observed);
+        }
+        return this.delayNanos;
+    }
+
+    private void addToken() {
+        this.tokens.getAndUpdate(t -> Math.min(MAX_TOKENS, t + this.tokensPerRequest));
+    }
+
+    private boolean tryAcquireToken() {
+        return this.tokens.getAndUpdate(t -> t >= TOKEN ? t - TOKEN : t) >= TOKEN;
+    }
+
+    private Counter counter(String name, String result, MeterRegistry meterRegistry) {
+        return Counter.builder(name + ".hedges")
+                .description("Hedged requests by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,169 @@
+package com.jmunoz.aggregator.client;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+// Une los streams de precios de varias fuentes (réplicas de stock-service) en uno solo.
+// Nos quedamos con el primer precio que llega de cada PriceUpdate.time por ticker: las copias que llegan después
+// desde otras fuentes (duplicate) y los precios con un time anterior al último que hemos dado (stale) se descartan.
+// Así, si una fuente se cae, las otras siguen dando precios sin hueco ni repeticiones.
+//
+// Métricas por fuente (tag source):
+// - stock.price-stream.source.ticks{result=won|duplicate|stale}: precios recibidos y qué ha pasado con ellos.
+// - stock.price-stream.source.win-rate: media móvil exponencial de los precios que gana la fuente (de 0 a 1).
+// - stock.price-stream.source.lag: cuánto llega cada precio después de la primera copia (0 si es la primera).
+//
+// El estado es por subscripción a merge() (una por conexión del hub). Flux.merge serializa los onNext de todas las
+// fuentes, así que accept() nunca se ejecuta a la vez y no necesita synchronized.
+class PriceFeedMerger {
+
+    // Precios ganadores que recordamos por ticker para medir el lag de las copias.
+    private static final int HISTORY = 32;
+    private static final double WIN_RATE_ALPHA = 0.01;
+
+    private final List<Source> sources = new ArrayList<>();
+
+    PriceFeedMerger(List<String> names, MeterRegistry meterRegistry) {
+        for (var name : names) {
+            this.sources.add(new Source(name, meterRegistry));
+        }
+    }
+
+    // Los streams en el mismo orden que los nombres del constructor.
+    Flux<PriceUpdate> merge(List<Flux<PriceUpdate>> streams) {
+        return Flux.defer(() -> {
+            var state = new State();
+            var tagged = new ArrayList<Flux<SourcedPrice>>();
+            for (int i = 0; i < streams.size(); i++) {
+                var source = i;
+                tagged.add(streams.get(i).map(p -> new SourcedPrice(source, p, System.nanoTime())));
+            }
+            return Flux.merge(tagged)
+                    .filter(p -> this.accept(state, p))
+                    .map(SourcedPrice::priceUpdate);
+        });
+    }
+
+    private boolean accept(State state, SourcedPrice sourced) {
+        var source = this.sources.get(sourced.source());
+        var priceUpdate = sourced.priceUpdate();
+        // Sin ticker o sin tiempo no podemos comparar: lo dejamos pasar.
+        if (Objects.isNull(priceUpdate.ticker()) || Objects.isNull(priceUpdate.time())) {
+            source.won();
+            return true;
+        }
+        var ticker = priceUpdate.ticker().ordinal();
+        var time = nanos(priceUpdate);
+        if (time > state.lastTimes[ticker]) {
+            state.won(ticker, time, sourced.arrivedAt());
+            source.won();
+            return true;
+        }
+        var wonAt = state.arrival(ticker, time);
+        if (wonAt != 0) {
+            source.duplicate(sourced.arrivedAt() - wonAt);
+        } else {
+            source.stale();
+        }
+        return false;
+    }
+
+    private static long nanos(PriceUpdate priceUpdate) {
+        var instant = priceUpdate.time().toInstant(ZoneOffset.UTC);
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    private record SourcedPrice(int source, PriceUpdate priceUpdate, long arrivedAt) {
+    }
+
+    // Por ticker: el time del último precio dado y un buffer circular con los últimos (time, llegada) ganadores.
+    private static class State {
+
+        private final long[] lastTimes = new long[Ticker.values().length];
+        private final long[][] times = new long[Ticker.values().length][HISTORY];
+        private final long[][] arrivals = new long[Ticker.values().length][HISTORY];
+        private final int[] heads = new int[Ticker.values().length];
+
+        State() {
+            Arrays.fill(this.lastTimes, Long.MIN_VALUE);
+        }
+
+        void won(int ticker, long time, long arrivedAt) {
+            this.lastTimes[ticker] = time;
+            var slot = this.heads[ticker];
+            this.times[ticker][slot] = time;
+            this.arrivals[ticker][slot] = arrivedAt;
+            this.heads[ticker] = (slot + 1) % HISTORY;
+        }
+
+        // Llegada del precio ganador con ese time, o 0 si no lo recordamos (o nunca lo hubo).
+        long arrival(int ticker, long time) {
+            for (int i = 0; i < HISTORY; i++) {
+                if (this.times[ticker][i] == time && this.arrivals[ticker][i] != 0) {
+                    return this.arrivals[ticker][i];
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static class Source {
+
+        private final Counter won;
+        private final Counter duplicates;
+        private final Counter stale;
+        private final Timer lag;
+        // Solo la escribe accept(), la lee el gauge.
+        private volatile double winRate;
+
+        Source(String name, MeterRegistry meterRegistry) {
+            this.won = ticks(name, "won", meterRegistry);
+            this.duplicates = ticks(name, "duplicate", meterRegistry);
+            this.stale = ticks(name, "stale", meterRegistry);
+            this.lag = Timer.builder("stock.price-stream.source.lag")
+                    .description("Delay of each price update behind the first copy received from any source")
+                    .tag("source", name)
+                    .register(meterRegistry);
+            Gauge.builder("stock.price-stream.source.win-rate", this, s -> s.winRate)
+                    .description("Exponential moving average of the price updates won by the source")
+                    .tag("source", name)
+                    .register(meterRegistry);
+        }
+
+        void won() {
+            this.won.increment();
+            this.lag.record(0, TimeUnit.NANOSECONDS);
+            this.winRate += WIN_RATE_ALPHA * (1 - this.winRate);
+        }
+
+        void duplicate(long lagNanos) {
+            this.duplicates.increment();
+            this.lag.record(lagNanos, TimeUnit.NANOSECONDS);
+            this.winRate -= WIN_RATE_ALPHA * this.winRate;
+        }
+
+        void stale() {
+            this.stale.increment();
+            this.winRate -= WIN_RATE_ALPHA * this.winRate;
+        }
+
+        private static Counter ticks(String name, String result, MeterRegistry meterRegistry) {
+            return Counter.builder("stock.price-stream.source.ticks")
+                    .description("Price updates received from each source by outcome")
+                    .tags("source", name, "result", result)
+                    .register(meterRegistry);
+        }
+    }
+}
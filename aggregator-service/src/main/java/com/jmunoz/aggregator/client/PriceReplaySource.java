@@ -0,0 +1,243 @@
+package com.jmunoz.aggregator.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.jmunoz.aggregator.config.PriceReplayProperties;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// Precios grabados en ficheros NDJSON (mismo formato que /stock/price-stream de stock-service), para probar
+// offline el fan-out de SSE y todo lo que depende del stream de precios (ver PriceReplayProperties).
+//
+// Los ficheros se leen en orden y los precios salen en el orden en que están grabados: dos reproducciones
+// del mismo fichero emiten exactamente lo mismo, solo cambia cuándo.
+// Las líneas vacías se ignoran. Una línea que no se puede parsear termina el stream con error.
+public class PriceReplaySource {
+
+    private static final Logger log = LoggerFactory.getLogger(PriceReplaySource.class);
+
+    // Un mapping no puede pasar de 2 GB. Los ficheros mayores se mapean por regiones que empiezan en un inicio de línea.
+    private static final long MAX_REGION = Integer.MAX_VALUE;
+    private static final byte NEW_LINE = '\n';
+
+    private final PriceReplayProperties properties;
+    private final ObjectReader reader;
+
+    public PriceReplaySource(PriceReplayProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.reader = objectMapper.readerFor(PriceUpdate.class);
+    }
+
+    public Flux<PriceUpdate> priceUpdates() {
+        var priceUpdates = Flux.fromIterable(this.properties.files())
+                .concatMap(this::replay, 0);
+        return this.properties.loop() ? priceUpdates.repeat() : priceUpdates;
+    }
+
+    // Cada fichero lleva su propio reloj: entre dos días grabados no se espera la noche.
+    private Flux<PriceUpdate> replay(Path file) {
+        log.info("replaying prices from {} ({}, speed {})", file, this.properties.reader(), this.properties.speed());
+        var priceUpdates = (switch (this.properties.reader()) {
+            case STREAM -> this.stream(file);
+            case MMAP -> this.mapped(file);
+        })
+                // La lectura (y los page faults del mapping) bloquean: fuera de los hilos de Netty.
+                .subscribeOn(Schedulers.boundedElastic());
+        return this.properties.speed() > 0 ? this.paced(priceUpdates) : priceUpdates;
+    }
+
+    // Cada precio sale cuando le toca según la distancia entre su time y el del primero, dividida por speed.
+    // El plazo se calcula respecto al inicio de la reproducción, no respecto al precio anterior, así los retrasos
+    // no se van acumulando. Un precio que ya va tarde sale inmediatamente, sin esperar.
+    private Flux<PriceUpdate> paced(Flux<PriceUpdate> priceUpdates) {
+        return Flux.defer(() -> {
+            var clock = new ReplayClock(this.properties.speed());
+            return priceUpdates.concatMap(p -> {
+                var delay = clock.delay(p.time());
+                return delay.isZero() ? Mono.just(p) : Mono.delay(delay).thenReturn(p);
+            }, 0);
+        });
+    }
+
+    private Flux<PriceUpdate> stream(Path file) {
+        return Flux.using(
+                () -> Files.newBufferedReader(file, StandardCharsets.UTF_8),
+                reader -> Flux.generate((SynchronousSink<PriceUpdate> sink) -> this.nextLine(reader, sink)),
+                this::close);
+    }
+
+    private void nextLine(BufferedReader reader, SynchronousSink<PriceUpdate> sink) {
+        try {
+            String line;
+            while (Objects.nonNull(line = reader.readLine())) {
+                if (!line.isBlank()) {
+                    sink.next(this.reader.readValue(line));
+                    return;
+                }
+            }
+            sink.complete();
+        } catch (IOException e) {
+            sink.error(e);
+        }
+    }
+
+    private Flux<PriceUpdate> mapped(Path file) {
+        return Flux.using(
+                () -> FileChannel.open(file, StandardOpenOption.READ),
+                channel -> Flux.generate(() -> new MappedLines(channel, MAX_REGION), this::nextMappedLine),
+                this::close);
+    }
+
+    private MappedLines nextMappedLine(MappedLines lines, SynchronousSink<PriceUpdate> sink) {
+        try {
+            var line = lines.next();
+            if (Objects.isNull(line)) {
+                sink.complete();
+            } else {
+                sink.next(this.reader.readValue(line, 0, lines.length()));
+            }
+        } catch (IOException e) {
+            sink.error(e);
+        }
+        return lines;
+    }
+
+    private void close(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            log.warn("could not close replay file: {}", e.getMessage());
+        }
+    }
+
+    // Recorre las líneas de un fichero mapeado en memoria.
+    // Cada línea se copia a un único array reutilizado (Jackson no parsea directamente desde un ByteBuffer),
+    // así que por precio no se crea ni un String ni un array nuevo.
+    private static class MappedLines {
+
+        private final FileChannel channel;
+        private final long size;
+        private final long maxRegion;
+        private MappedByteBuffer region;
+        private long regionStart;
+        private byte[] line = new byte[256];
+        private int length;
+
+        MappedLines(FileChannel channel, long maxRegion) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.maxRegion = maxRegion;
+            this.map(0);
+        }
+
+        // La siguiente línea no vacía (sus bytes están en [0, length())), o null al final del fichero.
+        byte[] next() throws IOException {
+            while (true) {
+                if (!this.region.hasRemaining()) {
+                    var next = this.regionStart + this.region.limit();
+                    if (next >= this.size) {
+                        return null;
+                    }
+                    this.map(next);
+                }
+                var start = this.region.position();
+                var end = this.lineEnd(start);
+                if (end < 0) {
+                    // La línea continúa en la siguiente región: la volvemos a mapear empezando por ella.
+                    // Si no es la última región y la línea no cabe entera, es que no es un fichero NDJSON.
+                    if (this.regionStart + this.region.limit() >= this.size) {
+                        end = this.region.limit();
+                    } else if (start == 0) {
+                        throw new IOException("line longer than " + this.maxRegion + " bytes at offset " + this.regionStart);
+                    } else {
+                        this.map(this.regionStart + start);
+                        continue;
+                    }
+                }
+                this.region.position(Math.min(end + 1, this.region.limit()));
+                if (this.copy(start, end)) {
+                    return this.line;
+                }
+            }
+        }
+
+        int length() {
+            return this.length;
+        }
+
+        private int lineEnd(int from) {
+            for (int i = from; i < this.region.limit(); i++) {
+                if (this.region.get(i) == NEW_LINE) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Copia la línea sin espacios ni '\r' al final. Devuelve false si está vacía.
+        private boolean copy(int start, int end) {
+            while (end > start && this.region.get(end - 1) <= ' ') {
+                end--;
+            }
+            this.length = end - start;
+            if (this.length == 0) {
+                return false;
+            }
+            if (this.line.length < this.length) {
+                this.line = new byte[Math.max(this.length, this.line.length * 2)];
+            }
+            this.region.get(start, this.line, 0, this.length);
+            return true;
+        }
+
+        private void map(long position) throws IOException {
+            this.regionStart = position;
+            this.region = this.channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(this.maxRegion, this.size - position));
+        }
+    }
+
+    // Reloj de una reproducción: relaciona el time del primer precio con el instante en que empezó.
+    // Un precio sin time sale sin esperar (y no pone en marcha el reloj).
+    private static class ReplayClock {
+
+        private final double speed;
+        private LocalDateTime firstTime;
+        private long startedAt;
+
+        ReplayClock(double speed) {
+            this.speed = speed;
+        }
+
+        Duration delay(LocalDateTime time) {
+            if (Objects.isNull(time)) {
+                return Duration.ZERO;
+            }
+            if (Objects.isNull(this.firstTime)) {
+                this.firstTime = time;
+                this.startedAt = System.nanoTime();
+                return Duration.ZERO;
+            }
+            var due = this.startedAt + (long) (Duration.between(this.firstTime, time).toNanos() / this.speed);
+            var delay = due - System.nanoTime();
+            return delay > 0 ? Duration.ofNanos(delay) : Duration.ZERO;
+        }
+    }
+}
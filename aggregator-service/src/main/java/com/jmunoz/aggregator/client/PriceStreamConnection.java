@@ -0,0 +1,124 @@
+package com.jmunoz.aggregator.client;
+
+import com.jmunoz.aggregator.config.PriceStreamReconnectProperties;
+import com.jmunoz.aggregator.domain.UpstreamState;
+import com.jmunoz.aggregator.dto.UpstreamStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Estado, backoff y métricas de la conexión de StockServiceClient con el stream de precios.
+// Cada intento de conexión se cuenta por separado: los mensajes recibidos y, al reconectar, cuánto tiempo
+// hemos estado sin precios.
+// Con varias fuentes (stock.price-stream.sources) hay una por fuente, y sus métricas llevan el tag source.
+// Lo actualizan los hilos de Netty y los del timer de los reintentos, así que los cambios de estado van con synchronized.
+class PriceStreamConnection {
+
+    private final long minBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long degradedAfterNanos;
+    private final Counter reconnects;
+    private final Timer gaps;
+    private final DistributionSummary messagesPerConnection;
+
+    private final Sinks.Many<UpstreamStatus> statuses = Sinks.many().replay().latest();
+    private final AtomicLong messages = new AtomicLong();
+
+    // Protegidos por this.
+    private UpstreamStatus status = new UpstreamStatus(UpstreamState.IDLE, Instant.now(), 0L, null);
+    // System.nanoTime() de la desconexión, o 0 si estamos conectados (o sin conexión a propósito).
+    private long disconnectedAt;
+
+    PriceStreamConnection(String source, PriceStreamReconnectProperties properties, MeterRegistry meterRegistry) {
+        this.minBackoffNanos = properties.minBackoff().toNanos();
+        this.maxBackoffNanos = properties.maxBackoff().toNanos();
+        this.degradedAfterNanos = properties.degradedAfter().toNanos();
+        this.reconnects = Counter.builder("stock.price-stream.reconnects")
+                .description("Reconnection attempts to the stock service price stream")
+                .tag("source", source)
+                .register(meterRegistry);
+        this.gaps = Timer.builder("stock.price-stream.gap")
+                .description("Time without a price stream connection, from the failure to the reconnection")
+                .tag("source", source)
+                .register(meterRegistry);
+        this.messagesPerConnection = DistributionSummary.builder("stock.price-stream.connection.messages")
+                .description("Price updates received on each connection to the stock service price stream")
+                .tag("source", source)
+                .register(meterRegistry);
+        this.statuses.tryEmitNext(this.status);
+    }
+
+    synchronized UpstreamStatus status() {
+        return this.status;
+    }
+
+    // El estado actual y después cada cambio.
+    Flux<UpstreamStatus> statuses() {
+        return this.statuses.asFlux();
+    }
+
+    // Full jitter: aleatorio entre 0 y el backoff exponencial, que nunca pasa de maxBackoff.
+    Duration backoff(long retriesInARow) {
+        var cap = (long) Math.min(this.maxBackoffNanos, this.minBackoffNanos * Math.pow(2, retriesInARow));
+        return Duration.ofNanos(ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+
+    // Empieza un intento de conexión.
+    void connecting() {
+        this.messages.set(0);
+    }
+
+    void connected() {
+        synchronized (this) {
+            if (this.disconnectedAt != 0) {
+                this.gaps.record(System.nanoTime() - this.disconnectedAt, TimeUnit.NANOSECONDS);
+                this.disconnectedAt = 0;
+            }
+            this.update(UpstreamState.CONNECTED, 0, null);
+        }
+    }
+
+    void message() {
+        this.messages.incrementAndGet();
+    }
+
+    // Termina un intento de conexión, por el motivo que sea.
+    void connectionEnded() {
+        this.messagesPerConnection.record(this.messages.getAndSet(0));
+    }
+
+    void reconnecting(String reason, long retriesInARow) {
+        this.reconnects.increment();
+        synchronized (this) {
+            var now = System.nanoTime();
+            if (this.disconnectedAt == 0) {
+                this.disconnectedAt = now;
+            }
+            var state = now - this.disconnectedAt >= this.degradedAfterNanos ? UpstreamState.DEGRADED : UpstreamState.RECONNECTING;
+            this.update(state, retriesInARow + 1, reason);
+        }
+    }
+
+    // Ya no hay conexión porque nadie la necesita. Si estábamos reconectando, ese hueco no se mide.
+    void idle() {
+        synchronized (this) {
+            this.disconnectedAt = 0;
+            this.update(UpstreamState.IDLE, 0, null);
+        }
+    }
+
+    private void update(UpstreamState state, long retries, String lastError) {
+        var since = state == this.status.state() ? this.status.since() : Instant.now();
+        this.status = new UpstreamStatus(state, since, retries, lastError);
+        this.statuses.tryEmitNext(this.status);
+    }
+}
@@ -1,66 +1,261 @@
 package com.jmunoz.aggregator.client;
 
+import com.jmunoz.aggregator.config.PriceStreamReconnectProperties;
 import com.jmunoz.aggregator.domain.Ticker;
 import com.jmunoz.aggregator.dto.PriceUpdate;
 import com.jmunoz.aggregator.dto.StockPriceResponse;
+import com.jmunoz.aggregator.dto.UpstreamStatus;
+import com.jmunoz.aggregator.metrics.LatencyRecorder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 // Aunque esto debería ser un @Component de Spring, vamos a tener una clase config donde lo expondremos como un @Bean.
 public class StockServiceClient {
 
     private static final Logger log = LoggerFactory.getLogger(StockServiceClient.class);
     private final WebClient client;
-    private Flux<PriceUpdate> flux;
+    private final Map<String, WebClient> streamClients;
+    private final Flux<PriceUpdate> flux;
+    // Una por fuente del stream de precios, en el mismo orden que streamClients.
+    private final List<PriceStreamConnection> connections = new ArrayList<>();
+    private final PriceFeedMerger merger;
+    private final Duration priceResultTtl;
+    private final Counter priceRequests;
+    private final Counter coalescedPriceLookups;
+    private final LatencyRecorder stockPriceLatency;
 
-    public StockServiceClient(WebClient client) {
+    // Petición en curso (o resultado reciente) del precio de cada ticker.
+    private final Map<Ticker, Mono<StockPriceResponse>> priceLookups = new ConcurrentHashMap<>();
+
+    // Creamos el publisher en el constructor (y no de forma lazy con un if null) para que dos primeros
+    // subscribers concurrentes no puedan abrir dos conexiones con stock-service.
+    // El stream de precios usa su propio WebClient (perfil clients.stock-stream): conexión larga y sin timeout de respuesta.
+    // streamClients: un WebClient por fuente del stream de precios (nombre -> cliente, ver stock.price-stream.sources).
+    // Con replaySource (puede ser null), los precios salen de ficheros grabados en vez de stock-service.
+    public StockServiceClient(WebClient client, Map<String, WebClient> streamClients, PriceReplaySource replaySource,
+                              PriceStreamReconnectProperties reconnect, Duration priceResultTtl,
+                              MeterRegistry meterRegistry) {
         this.client = client;
+        this.streamClients = streamClients;
+        streamClients.keySet().forEach(source -> this.connections.add(new PriceStreamConnection(source, reconnect, meterRegistry)));
+        this.merger = new PriceFeedMerger(List.copyOf(streamClients.keySet()), meterRegistry);
+        this.flux = this.getPriceUpdate(replaySource);
+        this.priceResultTtl = priceResultTtl;
+        this.priceRequests = Counter.builder("stock.price.lookups")
+                .description("Stock price lookups by outcome")
+                .tag("result", "request")
+                .register(meterRegistry);
+        this.coalescedPriceLookups = Counter.builder("stock.price.lookups")
+                .description("Stock price lookups by outcome")
+                .tag("result", "coalesced")
+                .register(meterRegistry);
+        // Solo medimos las peticiones a stock-service. El stream de precios es una conexión larga, así que no tiene latencia.
+        this.stockPriceLatency = LatencyRecorder.register("aggregator.client.requests", "Latency of each downstream client call",
+                Tags.of("client", "stock-service", "method", "getStockPrice"), meterRegistry);
     }
 
     // Si pasamos un ticker, obtendremos el precio.
+    // Los callers concurrentes del mismo ticker comparten una sola petición a stock-service (y su resultado).
+    // Con solo cuatro tickers, las peticiones pasan de ser O(trades) a O(tickers x ventana de tiempo).
     public Mono<StockPriceResponse> getStockPrice(Ticker ticker) {
+        return Mono.defer(() -> {
+            var created = new AtomicBoolean();
+            var lookup = this.priceLookups.computeIfAbsent(ticker, t -> {
+                created.set(true);
+                return this.sharedStockPrice(t);
+            });
+            (created.get() ? this.priceRequests : this.coalescedPriceLookups).increment();
+            return lookup;
+        });
+    }
+
+    // La petición se hace una vez y se cachea para todos los que se hayan enganchado.
+    // Al terminar se quita del mapa: los errores enseguida y los precios tras priceResultTtl.
+    private Mono<StockPriceResponse> sharedStockPrice(Ticker ticker) {
+        var holder = new AtomicReference<Mono<StockPriceResponse>>();
+        var lookup = this.requestStockPrice(ticker)
+                .doOnSuccess(r -> this.evict(ticker, holder.get(), this.priceResultTtl))
+                .doOnError(ex -> this.evict(ticker, holder.get(), Duration.ZERO))
+                .doOnCancel(() -> this.evict(ticker, holder.get(), Duration.ZERO))
+                .cache();
+        holder.set(lookup);
+        return lookup;
+    }
+
+    private void evict(Ticker ticker, Mono<StockPriceResponse> lookup, Duration delay) {
+        if (delay.isZero()) {
+            this.priceLookups.remove(ticker, lookup);
+        } else {
+            Schedulers.parallel().schedule(() -> this.priceLookups.remove(ticker, lookup), delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Mono<StockPriceResponse> requestStockPrice(Ticker ticker) {
         return this.client.get()
                 .uri("/stock/{ticker}", ticker)
                 .retrieve()
-                .bodyToMono(StockPriceResponse.class);
+                .bodyToMono(StockPriceResponse.class)
+                .transform(this.stockPriceLatency::record);
     }
 
     // ¡Solo creamos el publisher una vez!
     public Flux<PriceUpdate> priceUpdateStream() {
-        if (Objects.isNull(this.flux)) {
-            this.flux = this.getPriceUpdate();
-        }
         return this.flux;
     }
 
+    // Estado de la conexión con el stream de precios.
+    // Con varias fuentes, el de la que mejor esté: basta con una conectada para tener precios.
+    public UpstreamStatus priceStreamStatus() {
+        return best(this.connections.stream().map(PriceStreamConnection::status).toList());
+    }
+
+    // El estado actual y después cada cambio.
+    public Flux<UpstreamStatus> priceStreamStatuses() {
+        if (this.connections.size() == 1) {
+            return this.connections.getFirst().statuses();
+        }
+        var statuses = this.connections.stream().map(PriceStreamConnection::statuses).toList();
+        return Flux.combineLatest(statuses, values -> best(Arrays.stream(values).map(UpstreamStatus.class::cast).toList()))
+                .distinctUntilChanged();
+    }
+
+    // Estado de cada fuente del stream de precios.
+    public Map<String, UpstreamStatus> priceStreamSources() {
+        var sources = new LinkedHashMap<String, UpstreamStatus>();
+        var names = List.copyOf(this.streamClients.keySet());
+        for (int i = 0; i < names.size(); i++) {
+            sources.put(names.get(i), this.connections.get(i).status());
+        }
+        return sources;
+    }
+
+    // CONNECTED antes que RECONNECTING, antes que DEGRADED, antes que IDLE (el orden de UpstreamState no sirve).
+    private static UpstreamStatus best(List<UpstreamStatus> statuses) {
+        return statuses.stream()
+                .min(Comparator.comparingInt(s -> switch (s.state()) {
+                    case CONNECTED -> 0;
+                    case RECONNECTING -> 1;
+                    case DEGRADED -> 2;
+                    case IDLE -> 3;
+                }))
+                .orElseThrow();
+    }
+
     // Obtenemos actualizaciones de precios.
     // Es un Hot Publisher (ver la clase Hot Price Stream en README.md)
     // Solo tendremos un publisher y muchos subscribers (nuestros usuarios).
     // El punto de hacer este publisher un Hot Publisher es que no queremos que otros invoquen este méto-do, ya
     // que solo puede crearse este publisher una sola vez.
-    // Por eso este méto-do es private y solo se llama una vez desde el méto-do priceUpdateStream().
-    private Flux<PriceUpdate> getPriceUpdate() {
-        return this.client.get()
-                .uri("/stock/price-stream")
-                .accept(MediaType.APPLICATION_NDJSON)
-                .retrieve()
-                .bodyToFlux(PriceUpdate.class)
-                // Si ocurre un error en la conexión, reintentamos para iniciar el stream de nuevo.
-                .retryWhen(retry())
-                // Hot Publisher (guardamos el valor anterior en caché para cuando un nuevo subscriber se subscriba)
-                .cache(1);
+    // Por eso este méto-do es private y solo se llama una vez desde el constructor.
+    //
+    // Cada subscripción (la primera y cada reintento) es un intento de conexión: PriceStreamConnection pasa a
+    // CONNECTED cuando llega la respuesta de stock-service y cuenta los precios de esa conexión.
+    //
+    // Con varias fuentes nos subscribimos a todas a la vez, cada una con sus reintentos, y PriceFeedMerger se queda
+    // con la primera copia de cada precio. Una fuente que termina el stream sin error también vuelve a conectar (con
+    // el mismo backoff): el merge sigue con las demás, así que nos quedaríamos con una fuente menos sin enterarnos.
+    // Con varias fuentes, este stream no termina.
+    // Con una sola fuente no repetimos: que termine el stream es que stock-service lo ha terminado, y lo ven los
+    // subscribers del hub como siempre. Los que necesitan seguir (órdenes, indicadores, sesiones WebSocket) vuelven
+    // a subscribirse con su propia espera y reanudan desde su último id; los clientes SSE ven el stream completarse.
+    private Flux<PriceUpdate> getPriceUpdate(PriceReplaySource replaySource) {
+        Flux<PriceUpdate> source;
+        if (Objects.nonNull(replaySource)) {
+            var connection = this.connections.getFirst();
+            source = replaySource.priceUpdates()
+                    .doOnSubscribe(s -> connection.connected())
+                    .doFinally(signal -> connection.idle());
+        } else {
+            var streams = new ArrayList<Flux<PriceUpdate>>();
+            var clients = List.copyOf(this.streamClients.values());
+            for (int i = 0; i < clients.size(); i++) {
+                var connection = this.connections.get(i);
+                var stream = this.priceStreamConnection(clients.get(i), connection)
+                        // Si ocurre un error en la conexión, reintentamos para iniciar el stream de nuevo.
+                        .retryWhen(retry(connection));
+                // Solo con varias fuentes (ver arriba).
+                if (clients.size() > 1) {
+                    stream = stream.repeatWhen(repeat(connection));
+                }
+                // Sin conexión: nadie la necesita (ver refCount) o el stream ha terminado.
+                streams.add(stream.doFinally(signal -> connection.idle()));
+            }
+            // Con una sola fuente no hay nada que unir.
+            source = streams.size() == 1 ? streams.getFirst() : this.merger.merge(streams);
+        }
+        return source
+                // Hot Publisher con contador de referencias: conecta con el primer subscriber y cierra la conexión
+                // (y deja de reintentar) cuando se va el último. Si luego llega otro subscriber, se vuelve a conectar.
+                // El periodo de gracia sin subscribers lo gestiona StockPriceStreamService, que es quien se subscribe:
+                // así, mientras la conexión sigue abierta, los precios siguen llegando a LastPriceStore.
+                // El último precio de cada ticker lo guarda StockPriceStreamService, así se mantiene entre reconexiones.
+                .publish()
+                .refCount(1);
+    }
+
+    private Flux<PriceUpdate> priceStreamConnection(WebClient streamClient, PriceStreamConnection connection) {
+        return Mono.defer(() -> {
+                    connection.connecting();
+                    return streamClient.get()
+                            .uri("/stock/price-stream")
+                            .accept(MediaType.APPLICATION_NDJSON)
+                            .retrieve()
+                            .toEntityFlux(PriceUpdate.class);
+                })
+                .flatMapMany(response -> {
+                    connection.connected();
+                    return response.getBody();
+                })
+                .doOnNext(p -> connection.message())
+                .doFinally(signal -> connection.connectionEnded());
+    }
+
+    // Backoff exponencial con full jitter y sin límite de reintentos (ver PriceStreamReconnectProperties).
+    // Los reintentos seguidos vuelven a empezar desde cero en cuanto llega un precio.
+    private Retry retry(PriceStreamConnection connection) {
+        return Retry.from(signals -> signals.concatMap(rs -> {
+            var backoff = connection.backoff(rs.totalRetriesInARow());
+            connection.reconnecting(rs.failure().getMessage(), rs.totalRetriesInARow());
+            log.error("stock service price stream call failed. Retrying in {} ms: {}", backoff.toMillis(), rs.failure().getMessage());
+            return Mono.delay(backoff);
+        }));
     }
 
-    private Retry retry() {
-        return Retry.fixedDelay(100, Duration.ofSeconds(1))
-                .doBeforeRetry(rs -> log.error("stock service price stream call failed. Retrying: {}", rs.failure().getMessage()));
+    // Igual que retry(), pero cuando la fuente termina el stream. repeatWhen nos da los precios de cada conexión:
+    // solo cuentan como seguidas las que terminan sin ninguno.
+    private Function<Flux<Long>, Publisher<?>> repeat(PriceStreamConnection connection) {
+        return completions -> completions
+                .scan(-1L, (inARow, received) -> received == 0 ? inARow + 1 : 0)
+                .skip(1)
+                .concatMap(inARow -> {
+                    var backoff = connection.backoff(inARow);
+                    connection.reconnecting("price stream completed", inARow);
+                    log.warn("stock service price stream completed. Reconnecting in {} ms", backoff.toMillis());
+                    return Mono.delay(backoff);
+                });
     }
 }
@@ -0,0 +1,50 @@
+package com.jmunoz.aggregator.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jmunoz.aggregator.dto.PriceEvent;
+import com.jmunoz.aggregator.dto.PriceSocketMessage;
+import com.jmunoz.aggregator.dto.PriceSocketRequest;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+// Mensajes JSON del WebSocket de precios (ver PriceSocketMessage).
+// Igual que PriceUpdateSseFrames, cada precio se codifica una sola vez aunque lo reciban muchas sesiones:
+// el hub codifica el mensaje PRICE al publicar el precio y lo lleva en el PriceEvent, así que las sesiones solo
+// envuelven esos bytes.
+public class PriceSocketFrames {
+
+    private final ObjectMapper objectMapper;
+
+    public PriceSocketFrames(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public static DataBuffer price(PriceEvent event, DataBufferFactory bufferFactory) {
+        return bufferFactory.wrap(ByteBuffer.wrap(event.socketFrame()).asReadOnlyBuffer());
+    }
+
+    public byte[] encodePrice(long id, PriceUpdate priceUpdate) {
+        return this.encode(PriceSocketMessage.price(id, priceUpdate));
+    }
+
+    public DataBuffer message(PriceSocketMessage message, DataBufferFactory bufferFactory) {
+        return bufferFactory.wrap(this.encode(message));
+    }
+
+    public PriceSocketRequest read(String text) throws JsonProcessingException {
+        return this.objectMapper.readValue(text, PriceSocketRequest.class);
+    }
+
+    private byte[] encode(PriceSocketMessage message) {
+        try {
+            return this.objectMapper.writeValueAsBytes(message);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.jmunoz.aggregator.codec;
+
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.AbstractDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Lee el stream de frames binarios (ver PriceUpdateFrames), por ejemplo desde un WebClient de otro servicio JVM.
+// Un frame puede llegar partido entre dos DataBuffer, así que guardamos los bytes que sobran para el siguiente.
+public class PriceUpdateFrameDecoder extends AbstractDecoder<PriceUpdate> {
+
+    public PriceUpdateFrameDecoder() {
+        super(PriceUpdateFrames.MEDIA_TYPE);
+    }
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        return PriceUpdate.class.isAssignableFrom(elementType.toClass()) && super.canDecode(elementType, mimeType);
+    }
+
+    @Override
+    public Flux<PriceUpdate> decode(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+                                    MimeType mimeType, Map<String, Object> hints) {
+        return Flux.defer(() -> {
+            var pending = ByteBuffer.allocate(PriceUpdateFrames.FRAME_SIZE);
+            return Flux.from(inputStream)
+                    .concatMapIterable(buffer -> this.frames(buffer, pending));
+        });
+    }
+
+    @Override
+    public PriceUpdate decode(DataBuffer buffer, ResolvableType targetType, MimeType mimeType, Map<String, Object> hints) {
+        var pending = ByteBuffer.allocate(PriceUpdateFrames.FRAME_SIZE);
+        var frames = this.frames(buffer, pending);
+        return frames.isEmpty() ? null : frames.getFirst();
+    }
+
+    private List<PriceUpdate> frames(DataBuffer buffer, ByteBuffer pending) {
+        var frames = new ArrayList<PriceUpdate>();
+        try {
+            var bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            var input = ByteBuffer.wrap(bytes);
+            while (input.hasRemaining()) {
+                // Completamos el frame pendiente con los bytes que tengamos.
+                var length = Math.min(pending.remaining(), input.remaining());
+                pending.put(pending.position(), bytes, input.position(), length);
+                pending.position(pending.position() + length);
+                input.position(input.position() + length);
+                if (!pending.hasRemaining()) {
+                    frames.add(PriceUpdateFrames.decode(pending.flip()));
+                    pending.clear();
+                }
+            }
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,56 @@
+package com.jmunoz.aggregator.codec;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.PriceEvent;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Objects;
+
+// Representación binaria de tamaño fijo de un PriceUpdate, para consumidores que no necesitan JSON.
+// Cada frame ocupa 13 bytes (big-endian):
+//
+//   | ticker (1 byte, Ticker.ordinal()) | price (4 bytes, int) | time (8 bytes, epoch millis UTC) |
+//
+// Ni nombres de campos ni fechas como texto en cada precio.
+// Un PriceUpdate sin time se escribe con NO_TIME y se lee de nuevo sin time.
+//
+// Como los frames SSE (ver PriceUpdateSseFrames), el hub codifica el frame una vez al publicar el precio y cada
+// subscriber recibe un DataBuffer de solo lectura que envuelve esos bytes compartidos.
+public class PriceUpdateFrames {
+
+    public static final String MEDIA_TYPE_VALUE = "application/vnd.jmunoz.price-update-frame";
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+    public static final int FRAME_SIZE = Byte.BYTES + Integer.BYTES + Long.BYTES;
+
+    private static final Ticker[] TICKERS = Ticker.values();
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    public static DataBuffer frame(PriceEvent event, DataBufferFactory bufferFactory) {
+        return bufferFactory.wrap(ByteBuffer.wrap(event.frame()).asReadOnlyBuffer());
+    }
+
+    public static byte[] encode(PriceUpdate priceUpdate) {
+        var time = Objects.isNull(priceUpdate.time()) ? NO_TIME : priceUpdate.time().toInstant(ZoneOffset.UTC).toEpochMilli();
+        return ByteBuffer.allocate(FRAME_SIZE)
+                .put((byte) priceUpdate.ticker().ordinal())
+                .putInt(priceUpdate.price())
+                .putLong(time)
+                .array();
+    }
+
+    // Lee un frame a partir de la posición actual del buffer.
+    public static PriceUpdate decode(ByteBuffer buffer) {
+        var ticker = TICKERS[buffer.get()];
+        var price = buffer.getInt();
+        var millis = buffer.getLong();
+        var time = millis == NO_TIME ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+        return new PriceUpdate(ticker, price, time);
+    }
+}
@@ -0,0 +1,55 @@
+package com.jmunoz.aggregator.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jmunoz.aggregator.dto.PriceEvent;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Frames SSE ("id:{id}\ndata:{json}\n\n") de los precios, codificados una sola vez por precio.
+// El hub codifica el frame al publicar el precio y lo lleva en el PriceEvent (también en el buffer circular para
+// reanudar), así que los subscribers solo envuelven esos bytes. Con 5000 subscribers pasamos de 5000
+// serializaciones por precio a una.
+// Con el id, el navegador envía Last-Event-ID al reconectar y puede reanudar el stream.
+//
+// Cada subscriber recibe su propio DataBuffer de solo lectura que envuelve los bytes compartidos (sin copiarlos).
+// Los bytes son memoria heap normal, no de un pool: cuando Netty libera el buffer de un subscriber tras escribirlo,
+// los bytes siguen siendo válidos para los demás y no hay contador de referencias compartido que pueda desajustarse.
+public class PriceUpdateSseFrames {
+
+    private static final byte[] ID = "id:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DATA = "\ndata:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+
+    public PriceUpdateSseFrames(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public static DataBuffer frame(PriceEvent event, DataBufferFactory bufferFactory) {
+        return bufferFactory.wrap(ByteBuffer.wrap(event.sseFrame()).asReadOnlyBuffer());
+    }
+
+    public byte[] encode(long id, PriceUpdate priceUpdate) {
+        try {
+            var idBytes = Long.toString(id).getBytes(StandardCharsets.UTF_8);
+            var json = this.objectMapper.writeValueAsBytes(priceUpdate);
+            var out = new ByteArrayOutputStream(ID.length + idBytes.length + DATA.length + json.length + END.length);
+            out.writeBytes(ID);
+            out.writeBytes(idBytes);
+            out.writeBytes(DATA);
+            out.writeBytes(json);
+            out.writeBytes(END);
+            return out.toByteArray();
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
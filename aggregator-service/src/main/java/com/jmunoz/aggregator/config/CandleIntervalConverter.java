@@ -0,0 +1,16 @@
+package com.jmunoz.aggregator.config;
+
+import com.jmunoz.aggregator.domain.CandleInterval;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+// Para recibir ?interval=1s|1m en vez del nombre del enum.
+// Spring Boot registra en WebFlux los Converter que son beans. Un valor desconocido es un 400.
+@Component
+public class CandleIntervalConverter implements Converter<String, CandleInterval> {
+
+    @Override
+    public CandleInterval convert(String source) {
+        return CandleInterval.of(source);
+    }
+}
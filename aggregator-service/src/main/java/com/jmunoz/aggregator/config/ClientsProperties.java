@@ -0,0 +1,37 @@
+package com.jmunoz.aggregator.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import reactor.netty.http.HttpProtocol;
+
+import java.time.Duration;
+
+// Un perfil de cliente HTTP por cada servicio al que llamamos (clients.<perfil>.*).
+// El stream de precios tiene su propio perfil: una conexión larga sin timeout de respuesta no se configura
+// igual que las peticiones cortas de precios o de clientes.
+@ConfigurationProperties(prefix = "clients")
+public record ClientsProperties(@DefaultValue Profile customer,
+                                @DefaultValue Profile stock,
+                                @DefaultValue Profile stockStream) {
+
+    // Si no se indica responseTimeout, no hay timeout de respuesta.
+    public record Profile(@DefaultValue("50") int maxConnections,
+                          @DefaultValue("FIFO") Leasing leasing,
+                          @DefaultValue("1000") int pendingAcquireMaxCount,
+                          @DefaultValue("5s") Duration pendingAcquireTimeout,
+                          @DefaultValue("30s") Duration maxIdleTime,
+                          @DefaultValue("5m") Duration maxLifeTime,
+                          @DefaultValue("30s") Duration evictionInterval,
+                          @DefaultValue("HTTP11") HttpProtocol protocol,
+                          @DefaultValue("false") boolean compression,
+                          @DefaultValue("2s") Duration connectTimeout,
+                          Duration responseTimeout) {
+    }
+
+    // FIFO reparte las peticiones entre todas las conexiones del pool.
+    // LIFO reutiliza siempre las más recientes y deja que las demás caduquen por maxIdleTime.
+    public enum Leasing {
+        FIFO,
+        LIFO
+    }
+}
@@ -0,0 +1,32 @@
+package com.jmunoz.aggregator.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jmunoz.aggregator.codec.PriceSocketFrames;
+import com.jmunoz.aggregator.codec.PriceUpdateFrameDecoder;
+import com.jmunoz.aggregator.codec.PriceUpdateSseFrames;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CodecsConfig {
+
+    // El controller escribe los frames binarios directamente. El decoder es para los clientes JVM.
+    // Spring Boot aplica los CodecCustomizer tanto al servidor WebFlux como a WebClient.Builder (y WebTestClient).
+    @Bean
+    public CodecCustomizer priceUpdateFrameCodecs() {
+        return configurer -> configurer.customCodecs().register(new PriceUpdateFrameDecoder());
+    }
+
+    // Mismo ObjectMapper que usa WebFlux, así el JSON es idéntico al que generaría el writer de SSE.
+    @Bean
+    public PriceUpdateSseFrames priceUpdateSseFrames(ObjectMapper objectMapper) {
+        return new PriceUpdateSseFrames(objectMapper);
+    }
+
+    // Lo mismo para los mensajes del WebSocket de precios.
+    @Bean
+    public PriceSocketFrames priceSocketFrames(ObjectMapper objectMapper) {
+        return new PriceSocketFrames(objectMapper);
+    }
+}
@@ -0,0 +1,25 @@
+package com.jmunoz.aggregator.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+// Indicadores de cada ticker calculados en el servidor (stock.indicators.*).
+//
+// smaWindows: medias simples de los últimos N precios.
+// emaPeriods: medias exponenciales de periodo N (alpha = 2 / (N + 1)).
+// timeWindows: medias ponderadas por tiempo (TWAP) de la última ventana, según PriceUpdate.time.
+// timeWindowCapacity: precios que caben en cada ventana de tiempo. Si llegan más, se descartan los más antiguos
+// y la media de esa ventana pasa a ser aproximada.
+// publishPeriod: cada cuánto se envían los indicadores por SSE (solo si han cambiado).
+// idleTimeout: tiempo que se siguen calculando sin nadie mirando, para que los snapshots estén al día.
+@ConfigurationProperties(prefix = "stock.indicators")
+public record IndicatorProperties(@DefaultValue({"20", "50"}) List<Integer> smaWindows,
+                                  @DefaultValue({"12", "26"}) List<Integer> emaPeriods,
+                                  @DefaultValue({"1m", "5m"}) List<Duration> timeWindows,
+                                  @DefaultValue("8192") int timeWindowCapacity,
+                                  @DefaultValue("1s") Duration publishPeriod,
+                                  @DefaultValue("1m") Duration idleTimeout) {
+}
@@ -0,0 +1,32 @@
+package com.jmunoz.aggregator.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+// Reproducción del stream de precios desde ficheros NDJSON grabados (stock.price-stream.replay.*).
+// Si se indican ficheros, priceUpdateStream() los lee en orden en vez de conectar con stock-service.
+//
+// speed: 1 respeta los tiempos originales (según PriceUpdate.time), N los acelera N veces y 0 va lo más rápido posible.
+// loop: al terminar el último fichero vuelve a empezar. Si no, el stream se completa como cuando stock-service lo termina.
+@ConfigurationProperties(prefix = "stock.price-stream.replay")
+public record PriceReplayProperties(List<Path> files,
+                                    @DefaultValue("STREAM") Reader reader,
+                                    @DefaultValue("1") double speed,
+                                    @DefaultValue("false") boolean loop) {
+
+    public boolean enabled() {
+        return Objects.nonNull(this.files) && !this.files.isEmpty();
+    }
+
+    // STREAM lee cada fichero línea a línea con un buffer.
+    // MMAP lo mapea en memoria y copia cada línea a un único array reutilizado antes de parsearla (Jackson no parsea
+    // desde un ByteBuffer): no se lee el fichero entero al heap ni se crea un String por línea.
+    public enum Reader {
+        STREAM,
+        MMAP
+    }
+}
@@ -0,0 +1,17 @@
+package com.jmunoz.aggregator.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+// Reconexión del stream de precios con stock-service (stock.price-stream.reconnect.*).
+// Backoff exponencial con full jitter y sin límite de reintentos: cada reintento espera un tiempo aleatorio entre 0 y
+// min(maxBackoff, minBackoff * 2^reintentos). Así, cuando stock-service se reinicia, los aggregators no reconectan
+// todos a la vez.
+// degradedAfter: tiempo reintentando a partir del cual el estado pasa de RECONNECTING a DEGRADED.
+@ConfigurationProperties(prefix = "stock.price-stream.reconnect")
+public record PriceStreamReconnectProperties(@DefaultValue("100ms") Duration minBackoff,
+                                             @DefaultValue("30s") Duration maxBackoff,
+                                             @DefaultValue("10s") Duration degradedAfter) {
+}
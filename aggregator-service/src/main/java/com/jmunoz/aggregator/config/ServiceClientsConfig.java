@@ -1,33 +1,121 @@
 package com.jmunoz.aggregator.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jmunoz.aggregator.client.CustomerServiceClient;
+import com.jmunoz.aggregator.client.HedgedRequests;
+import com.jmunoz.aggregator.client.PriceReplaySource;
 import com.jmunoz.aggregator.client.StockServiceClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
 
 @Configuration
+@EnableConfigurationProperties({ClientsProperties.class, PriceReplayProperties.class, PriceStreamReconnectProperties.class, IndicatorProperties.class})
 public class ServiceClientsConfig {
 
     private static final Logger log = LoggerFactory.getLogger(ServiceClientsConfig.class);
 
+    private final ClientsProperties clients;
+
+    public ServiceClientsConfig(ClientsProperties clients) {
+        this.clients = clients;
+    }
+
     @Bean
-    public CustomerServiceClient customerServiceClient(@Value("${customer.service.url}") String baseUrl) {
-        return new CustomerServiceClient(createWebClient(baseUrl));
+    public CustomerServiceClient customerServiceClient(@Value("${customer.service.url}") String baseUrl,
+                                                       @Value("${customer.information.hedging.enabled}") boolean hedgingEnabled,
+                                                       @Value("${customer.information.hedging.percentile}") double hedgingPercentile,
+                                                       @Value("${customer.information.hedging.min-delay}") Duration hedgingMinDelay,
+                                                       @Value("${customer.information.hedging.max-rate}") double hedgingMaxRate,
+                                                       MeterRegistry meterRegistry) {
+        var hedgedRequests = new HedgedRequests("customer.information", hedgingEnabled, hedgingPercentile,
+                hedgingMinDelay, hedgingMaxRate, meterRegistry);
+        return new CustomerServiceClient(createWebClient(baseUrl, this.clients.customer(), customerConnectionProvider()),
+                hedgedRequests, meterRegistry);
     }
 
+    // Sin stock.price-stream.sources, el stream de precios sale de stock.service.url.
+    // Todas las fuentes comparten el pool de conexiones del perfil clients.stock-stream.
     @Bean
-    public StockServiceClient stockServiceClient(@Value("${stock.service.url}") String baseUrl) {
-        return new StockServiceClient(createWebClient(baseUrl));
+    public StockServiceClient stockServiceClient(@Value("${stock.service.url}") String baseUrl,
+                                                 @Value("${stock.price-stream.sources}") List<String> sources,
+                                                 @Value("${stock.price-lookup.result-ttl}") Duration priceResultTtl,
+                                                 PriceReplayProperties replay,
+                                                 PriceStreamReconnectProperties reconnect,
+                                                 ObjectMapper objectMapper,
+                                                 MeterRegistry meterRegistry) {
+        var replaySource = replay.enabled() ? new PriceReplaySource(replay, objectMapper) : null;
+        if (Objects.nonNull(replaySource)) {
+            log.info("price stream replay: {}", replay);
+        }
+        var streamClients = new LinkedHashMap<String, WebClient>();
+        for (var sourceUrl : sources.isEmpty() ? List.of(baseUrl) : sources) {
+            streamClients.put(sourceUrl, createWebClient(sourceUrl, this.clients.stockStream(), stockStreamConnectionProvider()));
+        }
+        return new StockServiceClient(createWebClient(baseUrl, this.clients.stock(), stockConnectionProvider()),
+                streamClients, replaySource, reconnect, priceResultTtl, meterRegistry);
+    }
+
+    // Un pool de conexiones por perfil. Al cerrar el contexto se cierran sus conexiones.
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider customerConnectionProvider() {
+        return createConnectionProvider("customer", this.clients.customer());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider stockConnectionProvider() {
+        return createConnectionProvider("stock", this.clients.stock());
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider stockStreamConnectionProvider() {
+        return createConnectionProvider("stock-stream", this.clients.stockStream());
+    }
+
+    // Con metrics(true), Reactor Netty publica en Micrometer las conexiones activas, idle y pendientes y el tiempo
+    // de acquire de cada pool (reactor.netty.connection.provider.*), con el tag name=<perfil>.
+    private ConnectionProvider createConnectionProvider(String name, ClientsProperties.Profile profile) {
+        log.info("{} client profile: {}", name, profile);
+        var builder = ConnectionProvider.builder(name)
+                .maxConnections(profile.maxConnections())
+                .pendingAcquireMaxCount(profile.pendingAcquireMaxCount())
+                .pendingAcquireTimeout(profile.pendingAcquireTimeout())
+                .maxIdleTime(profile.maxIdleTime())
+                .maxLifeTime(profile.maxLifeTime())
+                .evictInBackground(profile.evictionInterval())
+                .metrics(true);
+        return switch (profile.leasing()) {
+            case FIFO -> builder.fifo().build();
+            case LIFO -> builder.lifo().build();
+        };
     }
 
-    private WebClient createWebClient(String baseUrl) {
+    private WebClient createWebClient(String baseUrl, ClientsProperties.Profile profile, ConnectionProvider connectionProvider) {
         log.info("base url: {}", baseUrl);
+        var httpClient = HttpClient.create(connectionProvider)
+                .protocol(profile.protocol())
+                .compress(profile.compression())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) profile.connectTimeout().toMillis());
+        if (Objects.nonNull(profile.responseTimeout())) {
+            httpClient = httpClient.responseTimeout(profile.responseTimeout());
+        }
         return WebClient.builder()
                 .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .build();
     }
 }
@@ -0,0 +1,19 @@
+package com.jmunoz.aggregator.config;
+
+import com.jmunoz.aggregator.websocket.PriceSocketHandler;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+
+import java.util.Map;
+
+@Configuration
+public class WebSocketConfig {
+
+    // Orden -1: antes que los @RequestMapping, que también tienen rutas bajo /stock/price-stream.
+    @Bean
+    public HandlerMapping webSocketHandlerMapping(PriceSocketHandler priceSocketHandler) {
+        return new SimpleUrlHandlerMapping(Map.of("/stock/price-stream/ws", priceSocketHandler), -1);
+    }
+}
@@ -0,0 +1,32 @@
+package com.jmunoz.aggregator.controller;
+
+import com.jmunoz.aggregator.domain.CandleInterval;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.Candle;
+import com.jmunoz.aggregator.service.CandleService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequestMapping("stock")
+public class CandleController {
+
+    private final CandleService candleService;
+
+    public CandleController(CandleService candleService) {
+        this.candleService = candleService;
+    }
+
+    // Ejemplo: /stock/GOOGLE/candles/stream?interval=1s
+    // Una vela por ventana en vez de todos los precios. Por defecto velas de 1 minuto.
+    @GetMapping(value = "/{ticker}/candles/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<Candle> candleStream(@PathVariable Ticker ticker,
+                                     @RequestParam(defaultValue = "1m") CandleInterval interval) {
+        return this.candleService.candleStream(ticker, interval);
+    }
+}
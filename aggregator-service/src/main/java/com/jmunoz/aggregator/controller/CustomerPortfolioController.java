@@ -1,21 +1,36 @@
 package com.jmunoz.aggregator.controller;
 
 import com.jmunoz.aggregator.dto.CustomerInformation;
+import com.jmunoz.aggregator.dto.PortfolioValue;
 import com.jmunoz.aggregator.dto.StockTradeResponse;
 import com.jmunoz.aggregator.dto.TradeRequest;
+import com.jmunoz.aggregator.dto.TradeResult;
 import com.jmunoz.aggregator.service.CustomerPortfolioService;
-import com.jmunoz.aggregator.validator.RequestValidator;
+import com.jmunoz.aggregator.service.CustomerStreamService;
+import com.jmunoz.aggregator.service.PortfolioValuationService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("customers")
 public class CustomerPortfolioController {
 
     private final CustomerPortfolioService customerPortfolioService;
+    private final PortfolioValuationService portfolioValuationService;
+    private final CustomerStreamService customerStreamService;
 
-    public CustomerPortfolioController(CustomerPortfolioService customerPortfolioService) {
+    public CustomerPortfolioController(CustomerPortfolioService customerPortfolioService,
+                                       PortfolioValuationService portfolioValuationService,
+                                       CustomerStreamService customerStreamService) {
         this.customerPortfolioService = customerPortfolioService;
+        this.portfolioValuationService = portfolioValuationService;
+        this.customerStreamService = customerStreamService;
     }
 
     @GetMapping("/{customerId}")
@@ -23,11 +38,46 @@ public class CustomerPortfolioController {
         return this.customerPortfolioService.getCustomerInformation(customerId);
     }
 
+    // La información del cliente y después la nueva tras cada trade, sin tener que hacer polling de GET /customers/{customerId}.
+    @GetMapping(value = "/{customerId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Mono<ResponseEntity<Flux<ServerSentEvent<CustomerInformation>>>> customerInformationStream(@PathVariable Integer customerId) {
+        return this.customerStreamService.customerStream(customerId)
+                .map(ResponseEntity::ok);
+    }
+
+    // Varios clientes de una vez (GET /customers?ids=1,2,3), en una sola llamada a customer-service.
+    @GetMapping(params = "ids", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<CustomerInformation> getCustomersInformation(@RequestParam List<Integer> ids) {
+        return this.customerPortfolioService.getCustomersInformation(ids);
+    }
+
+    // Lo mismo, con los ids en el body (un array JSON), cuando son demasiados para la URL.
+    @PostMapping(value = "/search", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<CustomerInformation> searchCustomersInformation(@RequestBody Mono<List<Integer>> idsMono) {
+        return idsMono.flatMapMany(this.customerPortfolioService::getCustomersInformation);
+    }
+
     @PostMapping("/{customerId}/trade")
     public Mono<StockTradeResponse> trade(@PathVariable Integer customerId, @RequestBody Mono<TradeRequest> mono) {
-        // Validamos la entrada.
-        // Con TradeRequest validado (req) hacemos el trade.
-        return mono.transform(RequestValidator.validate())
-                .flatMap(req -> this.customerPortfolioService.trade(customerId, req));
+        // El service valida la entrada y, con TradeRequest validado, hace el trade.
+        return mono.flatMap(req -> this.customerPortfolioService.trade(customerId, req));
+    }
+
+    // Muchos trades en una sola petición (NDJSON), para los clientes que hacen cientos de trades por segundo.
+    // Devolvemos el resultado de cada trade en el mismo orden. Un trade que falla no para el resto.
+    @PostMapping(value = "/{customerId}/trades", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<TradeResult> trades(@PathVariable Integer customerId, @RequestBody Flux<TradeRequest> requests) {
+        return this.customerPortfolioService.trades(customerId, requests);
+    }
+
+    @GetMapping("/{customerId}/portfolio-value")
+    public Mono<PortfolioValue> getPortfolioValue(@PathVariable Integer customerId) {
+        return this.portfolioValuationService.getPortfolioValue(customerId);
+    }
+
+    // Valoración en vivo, sin tener que hacer polling de GET /customers/{customerId}.
+    @GetMapping(value = "/{customerId}/portfolio-value/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<PortfolioValue> portfolioValueStream(@PathVariable Integer customerId) {
+        return this.portfolioValuationService.portfolioValueStream(customerId);
     }
 }
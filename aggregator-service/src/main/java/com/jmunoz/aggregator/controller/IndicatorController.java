@@ -0,0 +1,35 @@
+package com.jmunoz.aggregator.controller;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.Indicators;
+import com.jmunoz.aggregator.service.IndicatorService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("stock")
+public class IndicatorController {
+
+    private final IndicatorService indicatorService;
+
+    public IndicatorController(IndicatorService indicatorService) {
+        this.indicatorService = indicatorService;
+    }
+
+    // Ejemplo: /stock/GOOGLE/indicators
+    @GetMapping("/{ticker}/indicators")
+    public Mono<Indicators> indicators(@PathVariable Ticker ticker) {
+        return this.indicatorService.indicators(ticker);
+    }
+
+    // Los indicadores cada stock.indicators.publish-period, en vez de todos los precios.
+    @GetMapping(value = "/{ticker}/indicators/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<Indicators> indicatorStream(@PathVariable Ticker ticker) {
+        return this.indicatorService.indicatorStream(ticker);
+    }
+}
@@ -0,0 +1,42 @@
+package com.jmunoz.aggregator.controller;
+
+import com.jmunoz.aggregator.dto.Order;
+import com.jmunoz.aggregator.dto.OrderRequest;
+import com.jmunoz.aggregator.service.OrderService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("customers")
+public class OrderController {
+
+    private final OrderService orderService;
+
+    public OrderController(OrderService orderService) {
+        this.orderService = orderService;
+    }
+
+    // La orden queda esperando (OPEN) hasta que el stream de precios llega a su precio.
+    @PostMapping("/{customerId}/orders")
+    public Mono<Order> place(@PathVariable Integer customerId, @RequestBody Mono<OrderRequest> mono) {
+        return mono.flatMap(req -> this.orderService.place(customerId, req));
+    }
+
+    // Cada cambio de estado de las órdenes del cliente, empezando por las que están activas.
+    @GetMapping(value = "/{customerId}/orders/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<Order> orderStream(@PathVariable Integer customerId) {
+        return this.orderService.orderUpdates(customerId);
+    }
+
+    @GetMapping("/{customerId}/orders/{orderId}")
+    public Mono<Order> getOrder(@PathVariable Integer customerId, @PathVariable Long orderId) {
+        return this.orderService.getOrder(customerId, orderId);
+    }
+
+    @DeleteMapping("/{customerId}/orders/{orderId}")
+    public Mono<Order> cancel(@PathVariable Integer customerId, @PathVariable Long orderId) {
+        return this.orderService.cancel(customerId, orderId);
+    }
+}
@@ -1,29 +1,85 @@
 package com.jmunoz.aggregator.controller;
 
-import com.jmunoz.aggregator.client.StockServiceClient;
-import com.jmunoz.aggregator.dto.PriceUpdate;
+import com.jmunoz.aggregator.codec.PriceUpdateFrames;
+import com.jmunoz.aggregator.codec.PriceUpdateSseFrames;
+import com.jmunoz.aggregator.domain.DeliveryPolicy;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.UpstreamStatus;
+import com.jmunoz.aggregator.service.StockPriceStreamService;
 import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("stock")
 public class StockPriceStreamController {
 
-    // Normalmente, crearíamos una clase de servicio que sería la que inyectaríamos aquí.
-    // Y ese servicio inyectaría el client y lo llamaría.
-    // Esto es lo que se ha hecho en CustomerPortfolioController.
-    // Pero como no se hace apenas nada, no veo la necesidad de crear una clase de servicio.
-    private final StockServiceClient stockServiceClient;
+    // Al principio inyectábamos directamente StockServiceClient, porque apenas se hacía nada.
+    // Ahora el servicio reparte los precios por ticker, igual que se hace en CustomerPortfolioController.
+    private final StockPriceStreamService stockPriceStreamService;
+
+    public StockPriceStreamController(StockPriceStreamService stockPriceStreamService) {
+        this.stockPriceStreamService = stockPriceStreamService;
+    }
+
+    // Ejemplo: /stock/price-stream?tickers=GOOGLE,APPLE
+    // Si no se indica tickers, se reciben los precios de todos.
+    // Con policy indicamos qué hacer si el subscriber consume despacio (por defecto CONFLATE).
+    //
+    // Si la cabecera Accept prefiere frames binarios (ver PriceUpdateFrames) los enviamos. Si no, SSE con JSON
+    // (también si no se indica Accept, como hace curl, o con */*).
+    // En vez de dejar que Jackson serialice cada precio para cada subscriber, escribimos directamente
+    // el frame SSE o binario que el hub codificó al publicar el precio (ver PriceUpdateSseFrames y PriceUpdateFrames).
+    // Hacemos flush de cada frame, igual que haría WebFlux con text/event-stream.
+    //
+    // Cada frame SSE lleva su id. Al reconectar, el navegador envía Last-Event-ID y el subscriber recibe primero
+    // los precios que se ha perdido (los que aún guardamos) y después los nuevos, sin repetidos.
+    // Los frames binarios no llevan id, así que con ellos no se reanuda.
+    @GetMapping(value = "/price-stream", produces = {MediaType.TEXT_EVENT_STREAM_VALUE, PriceUpdateFrames.MEDIA_TYPE_VALUE})
+    public Mono<Void> priceUpdateStream(@RequestParam(required = false) Set<Ticker> tickers,
+                                        @RequestParam(defaultValue = "CONFLATE") DeliveryPolicy policy,
+                                        @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                        ServerHttpRequest request,
+                                        ServerHttpResponse response) {
+        var bufferFactory = response.bufferFactory();
+        if (prefersFrames(request.getHeaders().getAccept())) {
+            var prices = this.stockPriceStreamService.priceEventStream(tickers, policy, null);
+            response.getHeaders().setContentType(PriceUpdateFrames.MEDIA_TYPE);
+            return response.writeAndFlushWith(prices.map(p -> Mono.just(PriceUpdateFrames.frame(p, bufferFactory))));
+        }
+        var prices = this.stockPriceStreamService.priceEventStream(tickers, policy, lastEventId);
+        response.getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+        return response.writeAndFlushWith(prices.map(p -> Mono.just(PriceUpdateSseFrames.frame(p, bufferFactory))));
+    }
+
+    // Comparamos la mayor calidad (q) con la que se acepta cada tipo, contando comodines como application/*.
+    // Si empatan (por ejemplo con */*) gana SSE.
+    private static boolean prefersFrames(List<MediaType> accept) {
+        return quality(accept, PriceUpdateFrames.MEDIA_TYPE) > quality(accept, MediaType.TEXT_EVENT_STREAM);
+    }
 
-    public StockPriceStreamController(StockServiceClient stockServiceClient) {
-        this.stockServiceClient = stockServiceClient;
+    private static double quality(List<MediaType> accept, MediaType mediaType) {
+        return accept.stream()
+                .filter(mediaType::isCompatibleWith)
+                .mapToDouble(MediaType::getQualityValue)
+                .max()
+                .orElse(0);
     }
 
-    @GetMapping(value = "/price-stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<PriceUpdate> priceUpdateStream() {
-        return this.stockServiceClient.priceUpdateStream();
+    // Estado de la conexión con stock-service (CONNECTED, RECONNECTING, DEGRADED o IDLE): el actual y cada cambio.
+    // Así un cliente sabe si que no lleguen precios es porque no cambian o porque la conexión está caída.
+    @GetMapping(value = "/price-stream/status", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<UpstreamStatus> upstreamStatus() {
+        return this.stockPriceStreamService.upstreamStatuses();
     }
 }
@@ -0,0 +1,36 @@
+package com.jmunoz.aggregator.domain;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+// Duración de las velas (OHLC) del stream de precios. En la API se indican como 1s y 1m.
+public enum CandleInterval {
+    ONE_SECOND("1s", Duration.ofSeconds(1)),
+    ONE_MINUTE("1m", Duration.ofMinutes(1));
+
+    private final String label;
+    private final Duration duration;
+
+    CandleInterval(String label, Duration duration) {
+        this.label = label;
+        this.duration = duration;
+    }
+
+    @JsonValue
+    public String label() {
+        return this.label;
+    }
+
+    public Duration duration() {
+        return this.duration;
+    }
+
+    public static CandleInterval of(String label) {
+        return Arrays.stream(values())
+                .filter(interval -> interval.label.equals(label))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown candle interval: " + label));
+    }
+}
@@ -0,0 +1,11 @@
+package com.jmunoz.aggregator.domain;
+
+// Qué hacer con un subscriber del stream de precios que consume más despacio de lo que llegan los precios.
+public enum DeliveryPolicy {
+    // Solo se guarda el último precio pendiente de cada ticker.
+    CONFLATE,
+    // Buffer acotado. Si se llena, se descarta el precio más antiguo.
+    DROP_OLDEST,
+    // Buffer acotado. Si se llena, se cierra la conexión del subscriber.
+    DISCONNECT;
+}
@@ -0,0 +1,12 @@
+package com.jmunoz.aggregator.domain;
+
+public enum OrderState {
+    // En el libro, esperando su precio.
+    OPEN,
+    // El precio ha llegado y el trade está en curso.
+    TRIGGERED,
+    FILLED,
+    // El trade ha fallado (por ejemplo, no hay saldo o acciones suficientes).
+    REJECTED,
+    CANCELLED;
+}
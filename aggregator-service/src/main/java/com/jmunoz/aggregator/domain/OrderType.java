@@ -0,0 +1,9 @@
+package com.jmunoz.aggregator.domain;
+
+// Órdenes que esperan en el libro hasta que el precio del stream llega al precio de la orden.
+public enum OrderType {
+    // Compra cuando el precio baja hasta price (o menos). Vende cuando sube hasta price (o más).
+    LIMIT,
+    // Compra cuando el precio sube hasta price (o más). Vende cuando baja hasta price (o menos).
+    STOP;
+}
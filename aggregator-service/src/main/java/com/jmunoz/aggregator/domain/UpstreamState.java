@@ -0,0 +1,12 @@
+package com.jmunoz.aggregator.domain;
+
+// Estado de la conexión con el stream de precios de stock-service.
+public enum UpstreamState {
+    // Sin conexión porque nadie la necesita (no hay subscribers o el stream ha terminado).
+    IDLE,
+    CONNECTED,
+    // La conexión ha fallado y estamos reintentando.
+    RECONNECTING,
+    // Llevamos reintentando más de stock.price-stream.reconnect.degraded-after: los precios no son fiables.
+    DEGRADED;
+}
@@ -0,0 +1,19 @@
+package com.jmunoz.aggregator.dto;
+
+import com.jmunoz.aggregator.domain.CandleInterval;
+import com.jmunoz.aggregator.domain.Ticker;
+
+import java.time.LocalDateTime;
+
+// Vela OHLC de un ticker: precios de apertura, máximo, mínimo y cierre de la ventana que empieza en start.
+// complete es false para la vela en curso que recibe un subscriber nuevo.
+public record Candle(Ticker ticker,
+                     CandleInterval interval,
+                     LocalDateTime start,
+                     Integer open,
+                     Integer high,
+                     Integer low,
+                     Integer close,
+                     Integer ticks,
+                     Boolean complete) {
+}
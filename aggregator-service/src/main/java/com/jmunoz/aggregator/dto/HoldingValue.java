@@ -0,0 +1,9 @@
+package com.jmunoz.aggregator.dto;
+
+import com.jmunoz.aggregator.domain.Ticker;
+
+public record HoldingValue(Ticker ticker,
+                           Integer quantity,
+                           Integer price,
+                           Integer value) {
+}
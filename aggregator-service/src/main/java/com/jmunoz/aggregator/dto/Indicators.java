@@ -0,0 +1,18 @@
+package com.jmunoz.aggregator.dto;
+
+import com.jmunoz.aggregator.domain.Ticker;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// Indicadores de un ticker tras su último precio (time, price). ticks es el número de precios recibidos.
+// Cada mapa va por ventana: número de precios en sma y ema ("20"), duración en twap ("1m").
+// Mientras no hay precios, todo salvo ticker y ticks es null.
+public record Indicators(Ticker ticker,
+                         LocalDateTime time,
+                         Integer price,
+                         Long ticks,
+                         Map<String, Double> sma,
+                         Map<String, Double> ema,
+                         Map<String, Double> twap) {
+}
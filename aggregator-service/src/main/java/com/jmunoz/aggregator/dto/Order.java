@@ -0,0 +1,44 @@
+package com.jmunoz.aggregator.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.jmunoz.aggregator.domain.OrderState;
+import com.jmunoz.aggregator.domain.OrderType;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
+import org.springframework.http.ProblemDetail;
+
+// Una orden límite o stop y su estado. Cada cambio de estado es una nueva instancia.
+// trade es la respuesta de customer-service cuando se ejecuta (FILLED) y error el motivo cuando falla (REJECTED).
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record Order(Long id,
+                    Integer customerId,
+                    Ticker ticker,
+                    TradeAction action,
+                    Integer quantity,
+                    OrderType type,
+                    Integer price,
+                    OrderState state,
+                    StockTradeResponse trade,
+                    ProblemDetail error) {
+
+    public static Order open(Long id, Integer customerId, OrderRequest request) {
+        return new Order(id, customerId, request.ticker(), request.action(), request.quantity(),
+                request.type(), request.price(), OrderState.OPEN, null, null);
+    }
+
+    public Order withState(OrderState state) {
+        return new Order(id, customerId, ticker, action, quantity, type, price, state, null, null);
+    }
+
+    public Order filled(StockTradeResponse trade) {
+        return new Order(id, customerId, ticker, action, quantity, type, price, OrderState.FILLED, trade, null);
+    }
+
+    public Order rejected(ProblemDetail error) {
+        return new Order(id, customerId, ticker, action, quantity, type, price, OrderState.REJECTED, null, error);
+    }
+
+    public TradeRequest toTradeRequest() {
+        return new TradeRequest(ticker, action, quantity);
+    }
+}
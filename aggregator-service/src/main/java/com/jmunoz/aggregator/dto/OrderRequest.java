@@ -0,0 +1,12 @@
+package com.jmunoz.aggregator.dto;
+
+import com.jmunoz.aggregator.domain.OrderType;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
+
+public record OrderRequest(Ticker ticker,
+                           TradeAction action,
+                           Integer quantity,
+                           OrderType type,
+                           Integer price) {
+}
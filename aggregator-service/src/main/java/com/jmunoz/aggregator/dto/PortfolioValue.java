@@ -0,0 +1,10 @@
+package com.jmunoz.aggregator.dto;
+
+import java.util.List;
+
+public record PortfolioValue(Integer customerId,
+                             Integer balance,
+                             Integer holdingsValue,
+                             Integer totalValue,
+                             List<HoldingValue> holdings) {
+}
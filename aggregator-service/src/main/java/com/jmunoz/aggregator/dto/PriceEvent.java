@@ -0,0 +1,12 @@
+package com.jmunoz.aggregator.dto;
+
+// Un precio del hub con su id de evento (el "id:" de SSE).
+// Los ids crecen siempre, para todos los tickers, así que un cliente puede reanudar el stream con Last-Event-ID.
+// sseFrame, socketFrame y frame son el frame SSE, el mensaje PRICE del WebSocket y el frame binario, codificados
+// una sola vez al publicar el precio (ver PriceUpdateSseFrames, PriceSocketFrames y PriceUpdateFrames).
+public record PriceEvent(long id,
+                         PriceUpdate priceUpdate,
+                         byte[] sseFrame,
+                         byte[] socketFrame,
+                         byte[] frame) {
+}
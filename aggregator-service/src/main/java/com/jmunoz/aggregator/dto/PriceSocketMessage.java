@@ -0,0 +1,44 @@
+package com.jmunoz.aggregator.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.jmunoz.aggregator.domain.Ticker;
+
+import java.util.List;
+import java.util.Set;
+
+// Mensaje del servidor por el WebSocket de precios (/stock/price-stream/ws).
+// - SUBSCRIPTIONS: respuesta a SUBSCRIBE y UNSUBSCRIBE, con todos los tickers subscritos.
+// - PRICE: un precio de un ticker subscrito, con su id de evento.
+// - SNAPSHOT: respuesta a SNAPSHOT, con el último precio conocido de cada ticker pedido.
+// - ERROR: mensaje del cliente que no se entiende. La sesión sigue abierta.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PriceSocketMessage(Type type,
+                                 Set<Ticker> tickers,
+                                 Long id,
+                                 PriceUpdate price,
+                                 List<PriceUpdate> prices,
+                                 String error) {
+
+    public enum Type {
+        SUBSCRIPTIONS,
+        PRICE,
+        SNAPSHOT,
+        ERROR;
+    }
+
+    public static PriceSocketMessage subscriptions(Set<Ticker> tickers) {
+        return new PriceSocketMessage(Type.SUBSCRIPTIONS, tickers, null, null, null, null);
+    }
+
+    public static PriceSocketMessage price(long id, PriceUpdate priceUpdate) {
+        return new PriceSocketMessage(Type.PRICE, null, id, priceUpdate, null, null);
+    }
+
+    public static PriceSocketMessage snapshot(List<PriceUpdate> prices) {
+        return new PriceSocketMessage(Type.SNAPSHOT, null, null, null, prices, null);
+    }
+
+    public static PriceSocketMessage error(String error) {
+        return new PriceSocketMessage(Type.ERROR, null, null, null, null, error);
+    }
+}
@@ -0,0 +1,18 @@
+package com.jmunoz.aggregator.dto;
+
+import com.jmunoz.aggregator.domain.Ticker;
+
+import java.util.Set;
+
+// Mensaje del cliente por el WebSocket de precios (/stock/price-stream/ws).
+// Sin tickers, SUBSCRIBE y UNSUBSCRIBE se aplican a todos, y SNAPSHOT a los que tiene subscritos.
+public record PriceSocketRequest(Type type,
+                                 Set<Ticker> tickers) {
+
+    public enum Type {
+        SUBSCRIBE,
+        UNSUBSCRIBE,
+        // Último precio conocido de cada ticker.
+        SNAPSHOT;
+    }
+}
@@ -0,0 +1,20 @@
+package com.jmunoz.aggregator.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.http.ProblemDetail;
+
+// Resultado de cada trade de un batch (POST /customers/{customerId}/trades): la respuesta o el error.
+// index es la posición del trade en el batch, empezando por 0.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TradeResult(Long index,
+                          StockTradeResponse response,
+                          ProblemDetail error) {
+
+    public static TradeResult success(Long index, StockTradeResponse response) {
+        return new TradeResult(index, response, null);
+    }
+
+    public static TradeResult failure(Long index, ProblemDetail error) {
+        return new TradeResult(index, null, error);
+    }
+}
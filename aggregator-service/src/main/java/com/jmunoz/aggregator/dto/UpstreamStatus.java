@@ -0,0 +1,13 @@
+package com.jmunoz.aggregator.dto;
+
+import com.jmunoz.aggregator.domain.UpstreamState;
+
+import java.time.Instant;
+
+// Estado de la conexión con el stream de precios, desde since.
+// retries: reintentos seguidos desde la última desconexión. lastError: el último error (si lo hay).
+public record UpstreamStatus(UpstreamState state,
+                             Instant since,
+                             Long retries,
+                             String lastError) {
+}
@@ -8,6 +8,10 @@ public class ApplicationExceptions {
         return Mono.error(new CustomerNotFoundException(customerId));
     }
 
+    public static <T> Mono<T> orderNotFound(Long orderId) {
+        return Mono.error(new OrderNotFoundException(orderId));
+    }
+
     public static <T> Mono<T> invalidTradeRequest(String message) {
         return Mono.error(new InvalidTradeRequestException(message));
     }
@@ -24,4 +28,12 @@ public class ApplicationExceptions {
     public static <T> Mono<T> invalidQuantity() {
         return Mono.error(new InvalidTradeRequestException("Quantity should be > 0"));
     }
+
+    public static <T> Mono<T> missingOrderType() {
+        return Mono.error(new InvalidTradeRequestException("Order Type is required"));
+    }
+
+    public static <T> Mono<T> invalidPrice() {
+        return Mono.error(new InvalidTradeRequestException("Price should be > 0"));
+    }
 }
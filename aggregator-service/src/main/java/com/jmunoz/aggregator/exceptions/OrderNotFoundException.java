@@ -0,0 +1,10 @@
+package com.jmunoz.aggregator.exceptions;
+
+public class OrderNotFoundException extends RuntimeException {
+
+    private static final String MESSAGE = "Order [id=%d] is not found";
+
+    public OrderNotFoundException(Long id) {
+        super(MESSAGE.formatted(id));
+    }
+}
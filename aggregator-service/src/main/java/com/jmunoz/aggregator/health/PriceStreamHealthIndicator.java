@@ -0,0 +1,54 @@
+package com.jmunoz.aggregator.health;
+
+import com.jmunoz.aggregator.client.StockServiceClient;
+import com.jmunoz.aggregator.domain.UpstreamState;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+// Estado de la conexión con el stream de precios en /actuator/health (componente priceStream).
+// RECONNECTING y DEGRADED son estados propios, no DOWN: que stock-service esté caído no debe hacer que se
+// reinicie el aggregator (ver management.endpoint.health.status.order en application.properties).
+@Component
+public class PriceStreamHealthIndicator implements ReactiveHealthIndicator {
+
+    public static final Status RECONNECTING = new Status(UpstreamState.RECONNECTING.name());
+    public static final Status DEGRADED = new Status(UpstreamState.DEGRADED.name());
+
+    private final StockServiceClient stockServiceClient;
+
+    public PriceStreamHealthIndicator(StockServiceClient stockServiceClient) {
+        this.stockServiceClient = stockServiceClient;
+    }
+
+    @Override
+    public Mono<Health> health() {
+        return Mono.fromSupplier(() -> {
+            var status = this.stockServiceClient.priceStreamStatus();
+            var health = switch (status.state()) {
+                case IDLE, CONNECTED -> Health.up();
+                case RECONNECTING -> Health.status(RECONNECTING);
+                case DEGRADED -> Health.status(DEGRADED);
+            };
+            health.withDetail("state", status.state())
+                    .withDetail("since", status.since())
+                    .withDetail("retries", status.retries());
+            if (Objects.nonNull(status.lastError())) {
+                health.withDetail("lastError", status.lastError());
+            }
+            // Con varias fuentes, el estado es el de la que mejor esté. Aquí se ve el de cada una.
+            var sources = this.stockServiceClient.priceStreamSources();
+            if (sources.size() > 1) {
+                var states = new LinkedHashMap<String, UpstreamState>();
+                sources.forEach((source, s) -> states.put(source, s.state()));
+                health.withDetail("sources", states);
+            }
+            return health.build();
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package com.jmunoz.aggregator.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Mide el tiempo desde que alguien se subscribe a un Mono/Flux hasta que termina, y lo registra en el Timer
+// de su resultado (tag outcome=success|error). Las cancelaciones no se registran.
+//
+// Los Timers se crean una sola vez, así que por petición no se buscan por tags: solo se crea un Timer.Sample
+// por subscripción (por eso el defer).
+public class LatencyRecorder {
+
+    // Percentiles que se publican de cada Timer (/actuator/metrics/<nombre>.percentile?tag=phi:0.99).
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final MeterRegistry meterRegistry;
+    private final Timer success;
+    private final Timer error;
+
+    private LatencyRecorder(MeterRegistry meterRegistry, Timer success, Timer error) {
+        this.meterRegistry = meterRegistry;
+        this.success = success;
+        this.error = error;
+    }
+
+    public static LatencyRecorder register(String name, String description, Tags tags, MeterRegistry meterRegistry) {
+        return new LatencyRecorder(meterRegistry,
+                timer(name, description, tags.and("outcome", "success"), meterRegistry),
+                timer(name, description, tags.and("outcome", "error"), meterRegistry));
+    }
+
+    public <T> Mono<T> record(Mono<T> mono) {
+        return Mono.defer(() -> {
+            var sample = Timer.start(this.meterRegistry);
+            return mono.doOnSuccess(value -> sample.stop(this.success))
+                    .doOnError(ex -> sample.stop(this.error));
+        });
+    }
+
+    public <T> Flux<T> record(Flux<T> flux) {
+        return Flux.defer(() -> {
+            var sample = Timer.start(this.meterRegistry);
+            return flux.doOnComplete(() -> sample.stop(this.success))
+                    .doOnError(ex -> sample.stop(this.error));
+        });
+    }
+
+    private static Timer timer(String name, String description, Tags tags, MeterRegistry meterRegistry) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentiles(PERCENTILES)
+                .register(meterRegistry);
+    }
+}
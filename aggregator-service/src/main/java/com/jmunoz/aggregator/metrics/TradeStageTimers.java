@@ -0,0 +1,56 @@
+package com.jmunoz.aggregator.metrics;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Objects;
+
+// Timers de cada etapa de un trade (aggregator.trade.stage), con los tags stage, ticker, action y outcome.
+// Así sabemos si un trade lento lo es por la validación, por el precio o por la llamada a customer-service.
+//
+// Creamos todas las combinaciones al arrancar (son pocas) y las buscamos por ordinal, sin crear Tags por petición.
+// Si la petición no trae ticker o action (no pasa la validación), se usa el tag "none".
+@Component
+public class TradeStageTimers {
+
+    public enum Stage {
+        VALIDATION,
+        PRICE,
+        CUSTOMER_TRADE,
+        TOTAL
+    }
+
+    private static final int TICKERS = Ticker.values().length + 1;
+    private static final int ACTIONS = TradeAction.values().length + 1;
+
+    private final LatencyRecorder[] recorders = new LatencyRecorder[Stage.values().length * TICKERS * ACTIONS];
+
+    public TradeStageTimers(MeterRegistry meterRegistry) {
+        for (var stage : Stage.values()) {
+            for (int ticker = 0; ticker < TICKERS; ticker++) {
+                for (int action = 0; action < ACTIONS; action++) {
+                    var tags = Tags.of(
+                            "stage", stage.name().toLowerCase(Locale.ROOT).replace('_', '-'),
+                            "ticker", ticker < Ticker.values().length ? Ticker.values()[ticker].name() : "none",
+                            "action", action < TradeAction.values().length ? TradeAction.values()[action].name() : "none");
+                    this.recorders[index(stage, ticker, action)] = LatencyRecorder.register("aggregator.trade.stage",
+                            "Latency of each trade stage", tags, meterRegistry);
+                }
+            }
+        }
+    }
+
+    public LatencyRecorder recorder(Stage stage, Ticker ticker, TradeAction action) {
+        var tickerIndex = Objects.isNull(ticker) ? TICKERS - 1 : ticker.ordinal();
+        var actionIndex = Objects.isNull(action) ? ACTIONS - 1 : action.ordinal();
+        return this.recorders[index(stage, tickerIndex, actionIndex)];
+    }
+
+    private static int index(Stage stage, int ticker, int action) {
+        return (stage.ordinal() * TICKERS + ticker) * ACTIONS + action;
+    }
+}
@@ -0,0 +1,133 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.domain.CandleInterval;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.Candle;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Vela en curso de un ticker e intervalo. Cada precio la actualiza en O(1), sin guardar los precios.
+// Las ventanas van por PriceUpdate.time (no por cuándo llega el precio), así que una reproducción acelerada
+// genera las mismas velas que el stream original.
+//
+// Una vela se cierra cuando llega un precio de una ventana posterior o cuando CandleService estima que su
+// ventana ya ha terminado. Un precio de una ventana anterior a la vela en curso significa que el stream ha vuelto
+// atrás (reconexión o reproducción en bucle): se cierra la vela y se empieza otra.
+// Los precios de la ventana que se acaba de cerrar llegan tarde y se descartan, igual que los de una ventana que
+// según el reloj de CandleService ya ha terminado (por ejemplo, el último precio que repite el hub si es antiguo):
+// no abren una vela que se cerraría con un solo precio en cuanto llegue el siguiente.
+// Un precio de la vela en curso que no es posterior al último (el mismo que repite el hub al volver a subscribirnos)
+// ya está contado y también se descarta.
+//
+// Cuando CandleService deja de recibir precios (no queda nadie mirando velas), la vela en curso se descarta con
+// reset(): le faltarían los precios de mientras tanto, así que no se puede dar ni en curso ni cerrada.
+//
+// Lo actualizan el stream de precios y el timer de CandleService, así que todo va con synchronized.
+class CandleAggregator {
+
+    private static final int BUFFER_SIZE = 64;
+
+    private final Ticker ticker;
+    private final CandleInterval interval;
+    private final long intervalNanos;
+
+    // Velas cerradas. replay().latest() para que un subscriber nuevo no se pierda la vela que se cierra
+    // justo mientras se subscribe (ver subscribe()).
+    private final Sinks.Many<Candle> closed = Sinks.many().replay().latest();
+
+    private boolean inProgress;
+    private long start;
+    private int open;
+    private int high;
+    private int low;
+    private int close;
+    private int ticks;
+    private long lastTimeNanos;
+    private long lastClosedStart = Long.MIN_VALUE;
+    private Candle lastClosed;
+
+    CandleAggregator(Ticker ticker, CandleInterval interval) {
+        this.ticker = ticker;
+        this.interval = interval;
+        this.intervalNanos = interval.duration().toNanos();
+    }
+
+    synchronized void apply(PriceUpdate priceUpdate, long timeNanos, long nowNanos) {
+        var window = Math.floorDiv(timeNanos, this.intervalNanos) * this.intervalNanos;
+        var current = this.inProgress && window == this.start;
+        if (current ? timeNanos <= this.lastTimeNanos : nowNanos >= window + this.intervalNanos) {
+            return;
+        }
+        if (this.inProgress && window != this.start) {
+            this.closeCandle();
+        }
+        if (!this.inProgress) {
+            if (window == this.lastClosedStart) {
+                return;
+            }
+            this.inProgress = true;
+            this.start = window;
+            this.open = this.high = this.low = priceUpdate.price();
+            this.ticks = 0;
+        }
+        var price = priceUpdate.price();
+        this.high = Math.max(this.high, price);
+        this.low = Math.min(this.low, price);
+        this.close = price;
+        this.ticks++;
+        this.lastTimeNanos = timeNanos;
+    }
+
+    // Cierra la vela en curso si su ventana termina antes de nowNanos.
+    synchronized void closeIfEnded(long nowNanos) {
+        if (this.inProgress && nowNanos >= this.start + this.intervalNanos) {
+            this.closeCandle();
+        }
+    }
+
+    // Descarta la vela en curso, sin cerrarla.
+    synchronized void reset() {
+        this.inProgress = false;
+    }
+
+    // Primero la vela en curso (si la hay y su ventana no ha terminado antes de nowNanos) y después las que se vayan
+    // cerrando, hasta que termine end. Una vela en curso cuya ventana ya ha terminado la cerrará el timer de
+    // CandleService y llegará como cerrada.
+    // Al subscribirnos, el sink repite la última vela cerrada: si es la que ya conocíamos, la saltamos; si no,
+    // es la vela en curso que se acaba de cerrar y hay que enviarla.
+    // El sink solo guarda la última vela, así que cada subscriber tiene su propio buffer (hay pocas velas por segundo).
+    // end va antes del buffer para que las velas pendientes se entreguen antes de terminar.
+    Flux<Candle> subscribe(Mono<Void> end, long nowNanos) {
+        Candle current;
+        Candle known;
+        synchronized (this) {
+            current = this.inProgress && nowNanos < this.start + this.intervalNanos ? this.candle(false) : null;
+            known = this.lastClosed;
+        }
+        var closed = this.closed.asFlux()
+                .skipWhile(c -> c == known)
+                .takeUntilOther(end)
+                .onBackpressureBuffer(BUFFER_SIZE, BufferOverflowStrategy.DROP_OLDEST);
+        return Flux.concat(Mono.justOrEmpty(current), closed);
+    }
+
+    private void closeCandle() {
+        this.inProgress = false;
+        this.lastClosedStart = this.start;
+        this.lastClosed = this.candle(true);
+        this.closed.tryEmitNext(this.lastClosed);
+    }
+
+    private Candle candle(boolean complete) {
+        var start = LocalDateTime.ofInstant(Instant.ofEpochSecond(Math.floorDiv(this.start, 1_000_000_000L),
+                Math.floorMod(this.start, 1_000_000_000L)), ZoneOffset.UTC);
+        return new Candle(this.ticker, this.interval, start, this.open, this.high, this.low, this.close, this.ticks, complete);
+    }
+}
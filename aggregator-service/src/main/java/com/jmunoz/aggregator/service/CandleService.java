@@ -0,0 +1,129 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.domain.CandleInterval;
+import com.jmunoz.aggregator.domain.DeliveryPolicy;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.Candle;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+// Velas OHLC de cada ticker calculadas en el servidor, para los clientes que solo necesitan barras de 1s o 1m
+// y no todos los precios.
+//
+// Un solo subscriber al hub de precios alimenta las velas de todos los tickers e intervalos, y solo mientras haya
+// alguien mirando velas. Cada subscriber recibe solo las velas de su ticker e intervalo.
+@Service
+public class CandleService {
+
+    private static final Ticker[] TICKERS = Ticker.values();
+    private static final CandleInterval[] INTERVALS = CandleInterval.values();
+    private static final long NO_CLOCK = Long.MIN_VALUE;
+
+    // Indexados por [intervalo][ticker].
+    private final CandleAggregator[][] aggregators = new CandleAggregator[INTERVALS.length][TICKERS.length];
+    private final Flux<PriceUpdate> feed;
+    private final LastPriceStore lastPriceStore;
+    private final long maxIntervalNanos;
+
+    // Reloj del stream: diferencia entre PriceUpdate.time y cuándo llegó el precio (System.nanoTime()).
+    // Con ella estimamos en qué momento del stream estamos aunque no lleguen precios, para cerrar las velas.
+    // Nos quedamos con el máximo, así un ticker que va un poco por detrás de otro no atrasa el reloj. Solo si el
+    // stream vuelve atrás más que la vela más larga (reconexión o reproducción en bucle) lo empezamos de nuevo.
+    // Solo lo escribe el feed.
+    private volatile long clockOffset = NO_CLOCK;
+
+    public CandleService(StockPriceStreamService stockPriceStreamService,
+                         LastPriceStore lastPriceStore,
+                         @Value("${stock.candles.close-check-period}") Duration closeCheckPeriod) {
+        this.lastPriceStore = lastPriceStore;
+        this.maxIntervalNanos = Arrays.stream(INTERVALS)
+                .mapToLong(interval -> interval.duration().toNanos())
+                .max()
+                .orElseThrow();
+        for (var interval : INTERVALS) {
+            for (var ticker : TICKERS) {
+                this.aggregators[interval.ordinal()][ticker.ordinal()] = new CandleAggregator(ticker, interval);
+            }
+        }
+        // Sin backpressure: cada precio solo actualiza unos contadores, así que CONFLATE nunca llega a descartar ninguno.
+        // Mientras el feed está activo, un timer cierra las velas cuyo ticker se ha quedado sin precios.
+        // Cuando se para, las velas en curso se descartan (ver CandleAggregator.reset()). Si el stream termina, antes
+        // de que lo vean los subscribers (doFinally llegaría después): uno que vuelve enseguida no recibe la vela vieja.
+        this.feed = Flux.defer(() -> {
+                    var timer = Schedulers.parallel().schedulePeriodically(this::closeEnded,
+                            closeCheckPeriod.toNanos(), closeCheckPeriod.toNanos(), TimeUnit.NANOSECONDS);
+                    Runnable stop = () -> {
+                        timer.dispose();
+                        this.resetAll();
+                    };
+                    return stockPriceStreamService.priceUpdateStream(null, DeliveryPolicy.CONFLATE)
+                            .doOnNext(this::apply)
+                            .doOnTerminate(stop)
+                            .doOnCancel(stop);
+                })
+                .publish()
+                .refCount(1);
+    }
+
+    // Primero la vela en curso y después cada vela cuando se cierra.
+    // Si el stream de precios termina, también termina el de velas.
+    // Sin reloj todavía no sabemos si la vela en curso ha terminado: se envía.
+    public Flux<Candle> candleStream(Ticker ticker, CandleInterval interval) {
+        return Flux.defer(() -> {
+            var clockOffset = this.clockOffset;
+            var now = clockOffset == NO_CLOCK ? Long.MIN_VALUE : System.nanoTime() + clockOffset;
+            return this.aggregators[interval.ordinal()][ticker.ordinal()].subscribe(this.feed.then(), now);
+        });
+    }
+
+    // Sin time no sabemos a qué vela pertenece el precio: lo saltamos.
+    // Al subscribirnos, el hub repite el último precio de cada ticker aunque sea antiguo. Contamos desde que llegó
+    // de verdad (ver LastPriceStore), así que su ventana ya puede haber terminado y no abre una vela pasada.
+    private void apply(PriceUpdate priceUpdate) {
+        if (Objects.isNull(priceUpdate.time())) {
+            return;
+        }
+        var instant = priceUpdate.time().toInstant(ZoneOffset.UTC);
+        var timeNanos = instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+        var offset = timeNanos - (System.nanoTime() - this.lastPriceStore.ageNanos(priceUpdate));
+        var clockOffset = this.clockOffset;
+        if (clockOffset == NO_CLOCK || offset > clockOffset || clockOffset - offset > this.maxIntervalNanos) {
+            this.clockOffset = offset;
+        }
+        var now = System.nanoTime() + this.clockOffset;
+        var i = priceUpdate.ticker().ordinal();
+        for (var interval : INTERVALS) {
+            this.aggregators[interval.ordinal()][i].apply(priceUpdate, timeNanos, now);
+        }
+    }
+
+    private void resetAll() {
+        for (var byTicker : this.aggregators) {
+            for (var aggregator : byTicker) {
+                aggregator.reset();
+            }
+        }
+    }
+
+    private void closeEnded() {
+        var clockOffset = this.clockOffset;
+        if (clockOffset == NO_CLOCK) {
+            return;
+        }
+        var now = System.nanoTime() + clockOffset;
+        for (var byTicker : this.aggregators) {
+            for (var aggregator : byTicker) {
+                aggregator.closeIfEnded(now);
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.dto.StockTradeResponse;
+
+// Trade completado, con System.nanoTime() de cuando empezó y de cuando terminó.
+record CompletedTrade(StockTradeResponse response,
+                      long startedAt,
+                      long completedAt) {
+}
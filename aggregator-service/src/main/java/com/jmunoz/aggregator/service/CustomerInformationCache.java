@@ -0,0 +1,201 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.dto.CustomerInformation;
+import com.jmunoz.aggregator.dto.Holding;
+import com.jmunoz.aggregator.dto.StockTradeResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Caché de la información de los clientes, delante de CustomerServiceClient.getCustomerInformation().
+// Los dashboards consultan los mismos clientes cada pocos segundos, así que no hace falta ir siempre a customer-service.
+//
+// - Guardamos el Mono de la carga en curso: las peticiones concurrentes de un cliente que no está en caché comparten una.
+// - Como mucho maxSize clientes (se expulsa el menos usado recientemente) y durante ttl desde que se cargaron.
+// - Tras un trade aplicamos el StockTradeResponse a la información cacheada, en vez de volver a pedirla.
+//
+// Las operaciones sobre el mapa son muy cortas, así que basta con un LinkedHashMap (orden de acceso) y synchronized.
+@Service
+public class CustomerInformationCache {
+
+    private final long ttlNanos;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expiredEvictions;
+    private final Counter tradeEvictions;
+    private final Timer loads;
+
+    // Guardado por this.
+    private final LinkedHashMap<Integer, Entry> entries;
+
+    public CustomerInformationCache(@Value("${customer.information.cache.max-size}") int maxSize,
+                                    @Value("${customer.information.cache.ttl}") Duration ttl,
+                                    MeterRegistry meterRegistry) {
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                var evict = this.size() > maxSize;
+                if (evict) {
+                    sizeEvictions.increment();
+                }
+                return evict;
+            }
+        };
+        this.hits = this.requests("hit", meterRegistry);
+        this.misses = this.requests("miss", meterRegistry);
+        this.sizeEvictions = this.evictions("size", meterRegistry);
+        this.expiredEvictions = this.evictions("expired", meterRegistry);
+        this.tradeEvictions = this.evictions("trade", meterRegistry);
+        this.loads = Timer.builder("customer.information.cache.loads")
+                .description("Time to load a customer into the cache")
+                .register(meterRegistry);
+        Gauge.builder("customer.information.cache.size", this, CustomerInformationCache::size)
+                .description("Customers in the cache")
+                .register(meterRegistry);
+    }
+
+    // Un acierto también puede ser una carga en curso que compartimos.
+    public Mono<CustomerInformation> get(Integer customerId, Supplier<Mono<CustomerInformation>> loader) {
+        return Mono.defer(() -> {
+            var loading = new AtomicBoolean();
+            var entry = this.getOrLoad(customerId, () -> {
+                loading.set(true);
+                return Entry.loading(this.load(customerId, loader));
+            });
+            (loading.get() ? this.misses : this.hits).increment();
+            return entry.mono();
+        });
+    }
+
+    // Un trade completado cambia el saldo y las acciones del cliente.
+    // Solo podemos aplicarlo si la información cacheada se cargó antes de empezar el trade (así seguro que no lo incluye).
+    // Si no (o si aún se está cargando), la expulsamos y la siguiente petición la vuelve a pedir.
+    // Aplicamos el trade como diferencia (no copiando el saldo) para que el orden entre trades concurrentes no importe.
+    public synchronized void tradeCompleted(StockTradeResponse response, long tradeStartedAt) {
+        var entry = this.entries.get(response.customerId());
+        if (Objects.isNull(entry)) {
+            return;
+        }
+        if (Objects.isNull(entry.value()) || entry.loadedAt() - tradeStartedAt >= 0) {
+            this.entries.remove(response.customerId());
+            this.tradeEvictions.increment();
+            return;
+        }
+        this.entries.put(response.customerId(), Entry.loaded(apply(entry.value(), response), entry.loadedAt()));
+    }
+
+    private synchronized Entry getOrLoad(Integer customerId, Supplier<Entry> loader) {
+        var entry = this.entries.get(customerId);
+        if (Objects.nonNull(entry) && Objects.nonNull(entry.value()) && System.nanoTime() - entry.loadedAt() > this.ttlNanos) {
+            this.entries.remove(customerId);
+            this.expiredEvictions.increment();
+            entry = null;
+        }
+        if (Objects.isNull(entry)) {
+            entry = loader.get();
+            this.entries.put(customerId, entry);
+        }
+        return entry;
+    }
+
+    // La carga se hace una vez y se cachea para todos los que se hayan enganchado.
+    // Al terminar, la cambiamos por el valor. Los errores y las cancelaciones no se guardan.
+    private Mono<CustomerInformation> load(Integer customerId, Supplier<Mono<CustomerInformation>> loader) {
+        var holder = new AtomicReference<Mono<CustomerInformation>>();
+        var load = Mono.defer(() -> {
+                    var start = System.nanoTime();
+                    return loader.get()
+                            .doOnSuccess(info -> this.loads.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+                })
+                .doOnSuccess(info -> this.loaded(customerId, holder.get(), info))
+                .doOnError(ex -> this.loaded(customerId, holder.get(), null))
+                .doOnCancel(() -> this.loaded(customerId, holder.get(), null))
+                .cache();
+        holder.set(load);
+        return load;
+    }
+
+    // Solo si la entrada sigue siendo la de esta carga (puede haberla expulsado un trade).
+    private synchronized void loaded(Integer customerId, Mono<CustomerInformation> load, CustomerInformation info) {
+        var entry = this.entries.get(customerId);
+        if (Objects.isNull(entry) || entry.load() != load) {
+            return;
+        }
+        if (Objects.isNull(info)) {
+            this.entries.remove(customerId);
+        } else {
+            this.entries.put(customerId, Entry.loaded(info, System.nanoTime()));
+        }
+    }
+
+    private synchronized int size() {
+        return this.entries.size();
+    }
+
+    // Igual que hace customer-service: las acciones que se quedan a 0 no se quitan y las nuevas van al final.
+    static CustomerInformation apply(CustomerInformation info, StockTradeResponse response) {
+        var sign = switch (response.action()) {
+            case BUY -> 1;
+            case SELL -> -1;
+        };
+        var holdings = new ArrayList<Holding>(info.holdings().size() + 1);
+        var found = false;
+        for (var holding : info.holdings()) {
+            if (holding.ticker() == response.ticker()) {
+                holding = new Holding(holding.ticker(), holding.quantity() + sign * response.quantity());
+                found = true;
+            }
+            holdings.add(holding);
+        }
+        if (!found) {
+            holdings.add(new Holding(response.ticker(), sign * response.quantity()));
+        }
+        return new CustomerInformation(info.id(), info.name(), info.balance() - sign * response.totalPrice(), holdings);
+    }
+
+    private Counter requests(String result, MeterRegistry meterRegistry) {
+        return Counter.builder("customer.information.cache.requests")
+                .description("Customer information cache requests by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private Counter evictions(String cause, MeterRegistry meterRegistry) {
+        return Counter.builder("customer.information.cache.evictions")
+                .description("Customer information cache evictions by cause")
+                .tag("cause", cause)
+                .register(meterRegistry);
+    }
+
+    // Mientras se carga, value es null y mono es la carga en curso. Después, mono es Mono.just(value).
+    // loadedAt es System.nanoTime() al terminar la carga.
+    private record Entry(Mono<CustomerInformation> mono,
+                         Mono<CustomerInformation> load,
+                         CustomerInformation value,
+                         long loadedAt) {
+
+        static Entry loading(Mono<CustomerInformation> load) {
+            return new Entry(load, load, null, 0);
+        }
+
+        static Entry loaded(CustomerInformation value, long loadedAt) {
+            return new Entry(Mono.just(value), null, value, loadedAt);
+        }
+    }
+}
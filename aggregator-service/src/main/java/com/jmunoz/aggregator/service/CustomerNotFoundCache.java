@@ -0,0 +1,95 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.exceptions.ApplicationExceptions;
+import com.jmunoz.aggregator.exceptions.CustomerNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+// Caché negativa: clientes que customer-service nos ha dicho hace poco que no existen.
+// Scrapers y clientes rotos insisten con ids que no existen, y cada petición costaba una llamada a customer-service.
+// Mientras dure el ttl respondemos directamente con CustomerNotFoundException (el mismo ProblemDetail de siempre).
+//
+// Como CustomerInformationCache: LinkedHashMap (orden de acceso) con como mucho maxSize ids, y synchronized.
+@Service
+public class CustomerNotFoundCache {
+
+    private final long ttlNanos;
+    private final Counter informationHits;
+    private final Counter tradeHits;
+
+    // Id del cliente -> System.nanoTime() en que customer-service respondió que no existe. Guardado por this.
+    private final LinkedHashMap<Integer, Long> notFound;
+
+    public CustomerNotFoundCache(@Value("${customer.not-found.cache.max-size}") int maxSize,
+                                 @Value("${customer.not-found.cache.ttl}") Duration ttl,
+                                 MeterRegistry meterRegistry) {
+        this.ttlNanos = ttl.toNanos();
+        this.notFound = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+                return this.size() > maxSize;
+            }
+        };
+        this.informationHits = this.hits("information", meterRegistry);
+        this.tradeHits = this.hits("trade", meterRegistry);
+        Gauge.builder("customer.not-found.cache.size", this, CustomerNotFoundCache::size)
+                .description("Unknown customer ids in the negative cache")
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> getCustomerInformation(Integer customerId, Supplier<Mono<T>> call) {
+        return this.guard(customerId, call, this.informationHits);
+    }
+
+    public <T> Mono<T> trade(Integer customerId, Supplier<Mono<T>> call) {
+        return this.guard(customerId, call, this.tradeHits);
+    }
+
+    private <T> Mono<T> guard(Integer customerId, Supplier<Mono<T>> call, Counter hits) {
+        return Mono.defer(() -> {
+            if (this.isNotFound(customerId)) {
+                hits.increment();
+                return ApplicationExceptions.customerNotFound(customerId);
+            }
+            return call.get()
+                    .doOnError(CustomerNotFoundException.class, ex -> this.notFound(customerId));
+        });
+    }
+
+    private synchronized boolean isNotFound(Integer customerId) {
+        var since = this.notFound.get(customerId);
+        if (Objects.isNull(since)) {
+            return false;
+        }
+        if (System.nanoTime() - since > this.ttlNanos) {
+            this.notFound.remove(customerId);
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void notFound(Integer customerId) {
+        this.notFound.put(customerId, System.nanoTime());
+    }
+
+    private synchronized int size() {
+        return this.notFound.size();
+    }
+
+    private Counter hits(String operation, MeterRegistry meterRegistry) {
+        return Counter.builder("customer.not-found.cache.hits")
+                .description("Requests answered from the negative cache, by operation")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+}
@@ -1,35 +1,161 @@
 package com.jmunoz.aggregator.service;
 
+import com.jmunoz.aggregator.advice.ApplicationExceptionHandler;
 import com.jmunoz.aggregator.client.CustomerServiceClient;
 import com.jmunoz.aggregator.client.StockServiceClient;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
 import com.jmunoz.aggregator.dto.*;
+import com.jmunoz.aggregator.metrics.LatencyRecorder;
+import com.jmunoz.aggregator.metrics.TradeStageTimers;
+import com.jmunoz.aggregator.validator.RequestValidator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 @Service
 public class CustomerPortfolioService {
 
     private final StockServiceClient stockServiceClient;
     private final CustomerServiceClient customerServiceClient;
+    private final LastPriceStore lastPriceStore;
+    private final StockPriceStreamService stockPriceStreamService;
+    private final Duration priceStoreHold;
+    private final CustomerInformationCache customerInformationCache;
+    private final CustomerNotFoundCache customerNotFoundCache;
+    private final int tradeBatchConcurrency;
+    private final Duration tradeBatchPriceTtl;
+    private final TradeStageTimers tradeStageTimers;
+
+    // Trades completados, para quien necesite enterarse (por ejemplo, la valoración en streaming del portfolio).
+    private final Sinks.Many<CompletedTrade> trades = Sinks.many().multicast().directBestEffort();
 
-    public CustomerPortfolioService(StockServiceClient stockServiceClient, CustomerServiceClient customerServiceClient) {
+    public CustomerPortfolioService(StockServiceClient stockServiceClient,
+                                    CustomerServiceClient customerServiceClient,
+                                    LastPriceStore lastPriceStore,
+                                    StockPriceStreamService stockPriceStreamService,
+                                    @Value("${stock.price-store.hold-after-trade}") Duration priceStoreHold,
+                                    CustomerInformationCache customerInformationCache,
+                                    CustomerNotFoundCache customerNotFoundCache,
+                                    @Value("${customer.trade-batch.concurrency}") int tradeBatchConcurrency,
+                                    @Value("${customer.trade-batch.price-ttl}") Duration tradeBatchPriceTtl,
+                                    TradeStageTimers tradeStageTimers) {
         this.stockServiceClient = stockServiceClient;
         this.customerServiceClient = customerServiceClient;
+        this.lastPriceStore = lastPriceStore;
+        this.stockPriceStreamService = stockPriceStreamService;
+        this.priceStoreHold = priceStoreHold;
+        this.customerInformationCache = customerInformationCache;
+        this.customerNotFoundCache = customerNotFoundCache;
+        this.tradeBatchConcurrency = tradeBatchConcurrency;
+        this.tradeBatchPriceTtl = tradeBatchPriceTtl;
+        this.tradeStageTimers = tradeStageTimers;
     }
 
     public Mono<CustomerInformation> getCustomerInformation(Integer customerId) {
-        return this.customerServiceClient.getCustomerInformation(customerId);
+        return this.customerNotFoundCache.getCustomerInformation(customerId, () ->
+                this.customerInformationCache.get(customerId, () -> this.customerServiceClient.getCustomerInformation(customerId)));
+    }
+
+    // Los informes piden muchos clientes a la vez: una sola llamada a customer-service, sin pasar por las cachés.
+    public Flux<CustomerInformation> getCustomersInformation(List<Integer> customerIds) {
+        return this.customerServiceClient.getCustomersInformation(customerIds);
     }
 
+    // La validación se hace aquí (y no en el controller) para medirla como una etapa más del trade.
     public Mono<StockTradeResponse> trade(Integer customerId, TradeRequest request) {
+        return this.trade(customerId, request, this::getStockPrice);
+    }
+
+    // Trade a un precio ya conocido, sin pedírselo a nadie: las órdenes límite y stop se ejecutan al precio
+    // del stream que las ha disparado. Pasa por las mismas etapas, cachés y notificaciones que cualquier otro trade.
+    public Mono<StockTradeResponse> trade(Integer customerId, TradeRequest request, Integer price) {
+        return this.trade(customerId, request, ticker -> Mono.just(price));
+    }
+
+    // Batch de trades de un cliente. Devolvemos el resultado de cada trade (su respuesta o su error) en el mismo
+    // orden que las peticiones, aunque se hagan hasta tradeBatchConcurrency trades a la vez.
+    // Todos los trades del batch de un mismo ticker comparten el precio, que se vuelve a pedir pasado tradeBatchPriceTtl.
+    // Como los trades se hacen a la vez, uno no puede contar con el resultado de otro anterior del mismo batch
+    // (por ejemplo, vender las acciones que compra el trade anterior).
+    public Flux<TradeResult> trades(Integer customerId, Flux<TradeRequest> requests) {
+        return Flux.defer(() -> {
+            var prices = new ConcurrentHashMap<Ticker, Mono<Integer>>();
+            Function<Ticker, Mono<Integer>> batchPrice = ticker -> prices.computeIfAbsent(ticker, t ->
+                    this.getStockPrice(t).cache(price -> this.tradeBatchPriceTtl, ex -> Duration.ZERO, () -> Duration.ZERO));
+            return requests.index()
+                    .flatMapSequential(t -> this.trade(customerId, t.getT2(), batchPrice)
+                            .map(response -> TradeResult.success(t.getT1(), response))
+                            .onErrorResume(ex -> Mono.just(TradeResult.failure(t.getT1(), ApplicationExceptionHandler.toProblemDetail(ex)))),
+                            this.tradeBatchConcurrency);
+        });
+    }
+
+    // Cada etapa (validación, precio, trade en customer-service y el total) se mide por separado.
+    private Mono<StockTradeResponse> trade(Integer customerId, TradeRequest request, Function<Ticker, Mono<Integer>> prices) {
+        var ticker = request.ticker();
+        var action = request.action();
+        // Validamos la entrada.
+        // Si sabemos que el cliente no existe, ni siquiera pedimos el precio.
+        return this.timer(TradeStageTimers.Stage.VALIDATION, ticker, action)
+                .record(Mono.just(request).transform(RequestValidator.validate()))
+                .flatMap(req -> this.customerNotFoundCache.trade(customerId, () -> this.executeTrade(customerId, req, prices)))
+                .transform(this.timer(TradeStageTimers.Stage.TOTAL, ticker, action)::record);
+    }
+
+    private Mono<StockTradeResponse> executeTrade(Integer customerId, TradeRequest request, Function<Ticker, Mono<Integer>> prices) {
         // Obtenemos el nuevo precio del ticker.
         // Luego construimos StockTradeRequest.
         // Hacemos el trade con el.
-        return this.stockServiceClient.getStockPrice(request.ticker())
-                .map(StockPriceResponse::price)
+        // Guardamos cuándo empieza el trade para saber si la información cacheada del cliente ya lo incluye.
+        var startedAt = System.nanoTime();
+        var ticker = request.ticker();
+        var action = request.action();
+        return this.timer(TradeStageTimers.Stage.PRICE, ticker, action)
+                .record(prices.apply(ticker))
                 .map(price -> this.toStockTradeRequest(request, price))
-                .flatMap(req -> this.customerServiceClient.trade(customerId, req));
+                .flatMap(req -> this.timer(TradeStageTimers.Stage.CUSTOMER_TRADE, ticker, action)
+                        .record(this.customerServiceClient.trade(customerId, req)))
+                .doOnNext(response -> this.customerInformationCache.tradeCompleted(response, startedAt))
+                .doOnNext(response -> this.publishTrade(response, startedAt));
+    }
+
+    private LatencyRecorder timer(TradeStageTimers.Stage stage, Ticker ticker, TradeAction action) {
+        return this.tradeStageTimers.recorder(stage, ticker, action);
+    }
+
+    public Flux<StockTradeResponse> tradeUpdates(Integer customerId) {
+        return this.completedTrades(customerId)
+                .map(CompletedTrade::response);
+    }
+
+    // Lo mismo, con cuándo empezó y terminó cada trade (ver CustomerStreamService).
+    Flux<CompletedTrade> completedTrades(Integer customerId) {
+        return this.trades.asFlux()
+                .filter(trade -> customerId.equals(trade.response().customerId()));
+    }
+
+    // Si el stream de precios nos ha dado un precio reciente lo usamos, y nos ahorramos la llamada a stock-service.
+    // Si es antiguo o el stream está caído, se lo pedimos a stock-service.
+    // LastPriceStore solo se alimenta mientras el hub está conectado, así que lo mantenemos conectado priceStoreHold
+    // después de cada trade: los siguientes trades ya encuentran el precio aunque nadie esté mirando el stream.
+    public Mono<Integer> getStockPrice(Ticker ticker) {
+        return this.lastPriceStore.freshPrice(ticker)
+                .doOnSubscribe(s -> this.stockPriceStreamService.hold(this.priceStoreHold))
+                .switchIfEmpty(Mono.defer(() -> this.stockServiceClient.getStockPrice(ticker).map(StockPriceResponse::price)));
+    }
 
+    // Los trades pueden completarse a la vez en distintos hilos, así que reintentamos si otro hilo está emitiendo.
+    private void publishTrade(StockTradeResponse response, long startedAt) {
+        var trade = new CompletedTrade(response, startedAt, System.nanoTime());
+        this.trades.emitNext(trade, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
     }
 
     // Esto podría estar en una clase de mapper, pero como solo necesitamos hacer un mapeo
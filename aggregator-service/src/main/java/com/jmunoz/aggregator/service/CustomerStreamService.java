@@ -0,0 +1,132 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.dto.CustomerInformation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Información de cada cliente en vivo (GET /customers/{id}/stream), en vez de hacer polling de GET /customers/{id}.
+//
+// Todas las sesiones de un cliente comparten un hub: la información se carga una vez y cada trade completado del
+// cliente (ver CustomerPortfolioService) se aplica a partir de su StockTradeResponse, sin volver a pedirla.
+// Igual que en CustomerInformationCache, solo lo aplicamos si sabemos que la información cargada no lo incluye:
+// - El trade terminó antes de empezar la carga: ya lo incluye y no cambia nada.
+// - El trade empezó después de terminar la carga: no lo incluye y lo aplicamos.
+// - Si no (trades a la vez que la carga), volvemos a pedir la información.
+//
+// El hub guarda la última información para las sesiones que llegan después y desaparece idleGracePeriod después de
+// irse la última sesión (así un navegador que reconecta no vuelve a pedir la información).
+@Service
+public class CustomerStreamService {
+
+    private final CustomerPortfolioService customerPortfolioService;
+    private final Duration heartbeatPeriod;
+    private final Duration idleGracePeriod;
+    private final Counter applied;
+    private final Counter included;
+    private final Counter reloads;
+
+    private final Map<Integer, Flux<CustomerInformation>> hubs = new ConcurrentHashMap<>();
+
+    public CustomerStreamService(CustomerPortfolioService customerPortfolioService,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${customer.stream.heartbeat-period}") Duration heartbeatPeriod,
+                                 @Value("${customer.stream.idle-grace-period}") Duration idleGracePeriod) {
+        this.customerPortfolioService = customerPortfolioService;
+        this.heartbeatPeriod = heartbeatPeriod;
+        this.idleGracePeriod = idleGracePeriod;
+        this.applied = meterRegistry.counter("customer.stream.trades", "result", "applied");
+        this.included = meterRegistry.counter("customer.stream.trades", "result", "included");
+        this.reloads = meterRegistry.counter("customer.stream.trades", "result", "reload");
+        meterRegistry.gauge("customer.stream.hubs", this.hubs, Map::size);
+    }
+
+    // La información actual y después cada cambio. Cada heartbeatPeriod, un comentario SSE para que los proxies no
+    // cierren la conexión y el cliente sepa que sigue viva aunque no haya trades.
+    // Esperamos a tener la información antes de devolver el stream: si el cliente no existe, el error llega antes de
+    // empezar la respuesta SSE y se responde con 404. El hub sigue conectado (idleGracePeriod) hasta que se subscribe el stream.
+    public Mono<Flux<ServerSentEvent<CustomerInformation>>> customerStream(Integer customerId) {
+        var hub = this.hub(customerId);
+        return hub.next()
+                .map(first -> {
+                    var updates = hub.map(info -> ServerSentEvent.builder(info).build());
+                    var heartbeats = Flux.interval(this.heartbeatPeriod)
+                            .map(i -> ServerSentEvent.<CustomerInformation>builder().comment("heartbeat").build());
+                    return Flux.merge(updates, heartbeats);
+                });
+    }
+
+    private Flux<CustomerInformation> hub(Integer customerId) {
+        return Flux.defer(() -> this.hubs.computeIfAbsent(customerId, this::createHub));
+    }
+
+    // Al desconectarse (o si falla la carga) quitamos el hub del mapa, solo si sigue siendo este.
+    private Flux<CustomerInformation> createHub(Integer customerId) {
+        var holder = new AtomicReference<Flux<CustomerInformation>>();
+        var hub = this.updates(customerId)
+                .doFinally(signal -> this.hubs.remove(customerId, holder.get()))
+                .replay(1)
+                .refCount(1, this.idleGracePeriod);
+        holder.set(hub);
+        return hub;
+    }
+
+    // Nos subscribimos a los trades antes de la primera carga (Optional.empty()) para no perder ninguno.
+    // concatMap procesa los eventos de uno en uno, así que el estado no necesita synchronized.
+    private Flux<CustomerInformation> updates(Integer customerId) {
+        return Flux.defer(() -> {
+            var state = new State();
+            return this.customerPortfolioService.completedTrades(customerId)
+                    .map(Optional::of)
+                    .startWith(Optional.<CompletedTrade>empty())
+                    .onBackpressureBuffer()
+                    .concatMap(event -> event.map(trade -> this.apply(customerId, state, trade))
+                            .orElseGet(() -> this.load(customerId, state)))
+                    .distinctUntilChanged();
+        });
+    }
+
+    private Mono<CustomerInformation> apply(Integer customerId, State state, CompletedTrade trade) {
+        if (trade.completedAt() - state.loadStartedAt < 0) {
+            this.included.increment();
+            return Mono.empty();
+        }
+        if (trade.startedAt() - state.loadedAt > 0) {
+            this.applied.increment();
+            state.info = CustomerInformationCache.apply(state.info, trade.response());
+            return Mono.just(state.info);
+        }
+        this.reloads.increment();
+        return this.load(customerId, state);
+    }
+
+    private Mono<CustomerInformation> load(Integer customerId, State state) {
+        return Mono.defer(() -> {
+            var startedAt = System.nanoTime();
+            return this.customerPortfolioService.getCustomerInformation(customerId)
+                    .doOnNext(info -> {
+                        state.info = info;
+                        state.loadStartedAt = startedAt;
+                        state.loadedAt = System.nanoTime();
+                    });
+        });
+    }
+
+    // La última información del cliente y System.nanoTime() de cuándo empezó y terminó su carga.
+    private static class State {
+
+        private CustomerInformation info;
+        private long loadStartedAt;
+        private long loadedAt;
+    }
+}
@@ -0,0 +1,114 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.config.IndicatorProperties;
+import com.jmunoz.aggregator.domain.DeliveryPolicy;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.Indicators;
+import com.jmunoz.aggregator.dto.PriceEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+// Indicadores (SMA, EMA y TWAP) de cada ticker calculados en el servidor, para que los dashboards no tengan que
+// recibir todos los precios para calcularlos.
+//
+// Igual que las velas (ver CandleService), un solo subscriber al hub de precios alimenta los indicadores de todos
+// los tickers. Sigue subscrito idleTimeout después del último snapshot o de que se vaya el último stream, para que
+// un snapshot encuentre los indicadores al día. Al volver a subscribirse reanuda desde el último id de evento, así
+// ningún precio se cuenta dos veces.
+@Service
+public class IndicatorService {
+
+    private static final Ticker[] TICKERS = Ticker.values();
+
+    // Indexados por Ticker.ordinal().
+    private final TickerIndicators[] indicators = new TickerIndicators[TICKERS.length];
+    private final Flux<PriceEvent> feed;
+    private final Duration publishPeriod;
+    private final Duration idleTimeout;
+
+    // Solo lo cambia el feed.
+    private volatile Long lastEventId;
+
+    // Subscripción que mantiene el feed activo sin nadie mirando, hasta warmUntil (System.nanoTime()).
+    private Disposable warm;
+    private Disposable idleTimer;
+    private long warmUntil;
+
+    public IndicatorService(StockPriceStreamService stockPriceStreamService,
+                            IndicatorProperties properties) {
+        Arrays.setAll(this.indicators, i -> new TickerIndicators(TICKERS[i], properties));
+        this.publishPeriod = properties.publishPeriod();
+        this.idleTimeout = properties.idleTimeout();
+        // Con DISCONNECT no se salta ningún precio: si el feed no da abasto, el hub lo desconecta y volvemos a
+        // subscribirnos desde lastEventId, así que los precios que faltaban llegan del buffer de reanudación.
+        this.feed = Flux.defer(() -> stockPriceStreamService.priceEventStream(null, DeliveryPolicy.DISCONNECT, this.lastEventId))
+                .doOnNext(this::apply)
+                .retryWhen(Retry.indefinitely().filter(Exceptions::isOverflow))
+                .publish()
+                .refCount(1);
+    }
+
+    // Los indicadores actuales. Si no se estaban calculando, empiezan a calcularse ahora (y este snapshot puede
+    // llegar sin precios todavía).
+    public Mono<Indicators> indicators(Ticker ticker) {
+        return Mono.fromSupplier(() -> {
+            this.keepWarm();
+            return this.indicators[ticker.ordinal()].snapshot();
+        });
+    }
+
+    // Los indicadores cada publishPeriod, solo si ha llegado algún precio desde el último envío.
+    // Si el stream de precios termina, se envían los últimos indicadores y termina también este.
+    public Flux<Indicators> indicatorStream(Ticker ticker) {
+        var indicators = this.indicators[ticker.ordinal()];
+        return Flux.interval(Duration.ZERO, this.publishPeriod)
+                .takeUntilOther(this.feed.then())
+                .concatWith(Mono.just(0L))
+                .map(i -> indicators.snapshot())
+                .filter(snapshot -> snapshot.ticks() > 0)
+                .distinctUntilChanged(Indicators::ticks)
+                .doOnCancel(this::keepWarm);
+    }
+
+    // Activa el feed si no lo estaba y lo mantiene idleTimeout más.
+    private synchronized void keepWarm() {
+        if (Objects.isNull(this.warm) || this.warm.isDisposed()) {
+            this.warm = this.feed.subscribe();
+        }
+        if (Objects.nonNull(this.idleTimer)) {
+            this.idleTimer.dispose();
+        }
+        this.warmUntil = System.nanoTime() + this.idleTimeout.toNanos();
+        this.idleTimer = Schedulers.parallel().schedule(this::coolDown, this.idleTimeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    // Un timer anterior puede llegar tarde, después de que keepWarm() haya alargado el plazo.
+    private synchronized void coolDown() {
+        if (System.nanoTime() - this.warmUntil >= 0) {
+            this.warm.dispose();
+        }
+    }
+
+    // Sin ticker o sin time no sabemos qué indicadores actualizar ni cuánto ha durado el precio: lo saltamos.
+    private void apply(PriceEvent event) {
+        this.lastEventId = event.id();
+        var priceUpdate = event.priceUpdate();
+        if (Objects.isNull(priceUpdate.ticker()) || Objects.isNull(priceUpdate.time())) {
+            return;
+        }
+        var instant = priceUpdate.time().toInstant(ZoneOffset.UTC);
+        var timeNanos = instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+        this.indicators[priceUpdate.ticker().ordinal()].apply(priceUpdate.price(), timeNanos);
+    }
+}
@@ -0,0 +1,71 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Último precio de cada ticker, alimentado por el stream de precios (StockPriceStreamService).
+// Permite hacer un trade sin llamar a stock-service, siempre que el precio sea lo bastante reciente.
+@Service
+public class LastPriceStore {
+
+    private final long maxStalenessNanos;
+
+    // Indexado por Ticker.ordinal().
+    private final AtomicReferenceArray<Entry> entries = new AtomicReferenceArray<>(Ticker.values().length);
+
+    // Sin stream no llegan precios nuevos, así que ninguno se considera reciente.
+    private volatile boolean streaming;
+
+    public LastPriceStore(@Value("${stock.price-store.max-staleness}") Duration maxStaleness) {
+        this.maxStalenessNanos = maxStaleness.toNanos();
+    }
+
+    public void update(PriceUpdate priceUpdate) {
+        this.entries.set(priceUpdate.ticker().ordinal(), new Entry(priceUpdate, System.nanoTime()));
+    }
+
+    public void streaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    // Último precio conocido, sea cual sea su antigüedad.
+    public Optional<PriceUpdate> latest(Ticker ticker) {
+        return Optional.ofNullable(this.entries.get(ticker.ordinal()))
+                .map(Entry::priceUpdate);
+    }
+
+    // Cuánto hace que llegó este precio, si es el último que tenemos de su ticker (por ejemplo, el que repite el hub
+    // a un subscriber nuevo). Si no, 0: es un precio que acaba de llegar.
+    public long ageNanos(PriceUpdate priceUpdate) {
+        var entry = this.entries.get(priceUpdate.ticker().ordinal());
+        return Objects.nonNull(entry) && entry.priceUpdate().equals(priceUpdate) ? System.nanoTime() - entry.receivedAt() : 0;
+    }
+
+    // false si este precio es el último que tenemos de su ticker y llegó hace más de maxStaleness.
+    public boolean fresh(PriceUpdate priceUpdate) {
+        return this.ageNanos(priceUpdate) <= this.maxStalenessNanos;
+    }
+
+    // Vacío si no tenemos precio, si es demasiado antiguo o si el stream está caído.
+    public Mono<Integer> freshPrice(Ticker ticker) {
+        return Mono.fromSupplier(() -> {
+            var entry = this.entries.get(ticker.ordinal());
+            if (!this.streaming || Objects.isNull(entry) || System.nanoTime() - entry.receivedAt() > this.maxStalenessNanos) {
+                return null;
+            }
+            return entry.priceUpdate().price();
+        });
+    }
+
+    private record Entry(PriceUpdate priceUpdate,
+                         long receivedAt) {
+    }
+}
@@ -0,0 +1,86 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.domain.OrderType;
+import com.jmunoz.aggregator.domain.TradeAction;
+import com.jmunoz.aggregator.dto.Order;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+// Órdenes límite y stop que esperan su precio, de un solo ticker.
+//
+// Hay dos lados, ordenados por precio:
+// - below: se disparan cuando el precio baja hasta el de la orden (compra límite y venta stop).
+// - above: se disparan cuando el precio sube hasta el de la orden (venta límite y compra stop).
+// Con cada precio, las órdenes que se disparan son un rango contiguo de cada lado: las de precio >= p en below
+// y las de precio <= p en above. Encontrar el rango es O(log n) y sacarlo O(k), con k las órdenes disparadas;
+// el resto de órdenes del libro ni se miran.
+//
+// Cada nivel de precio guarda sus órdenes por id en orden de llegada, así cancelar una orden es O(log n) y no
+// hay que recorrer el nivel. Las órdenes de un nivel se disparan en orden de llegada.
+public class OrderBook {
+
+    // Protegidos por this.
+    private final TreeMap<Integer, Map<Long, Order>> below = new TreeMap<>();
+    private final TreeMap<Integer, Map<Long, Order>> above = new TreeMap<>();
+    private int size;
+
+    public synchronized void add(Order order) {
+        this.side(order)
+                .computeIfAbsent(order.price(), price -> new LinkedHashMap<>())
+                .put(order.id(), order);
+        this.size++;
+    }
+
+    // false si la orden ya no está en el libro (por ejemplo, se acaba de disparar).
+    public synchronized boolean remove(Order order) {
+        var side = this.side(order);
+        var level = side.get(order.price());
+        if (Objects.isNull(level) || Objects.isNull(level.remove(order.id()))) {
+            return false;
+        }
+        if (level.isEmpty()) {
+            side.remove(order.price());
+        }
+        this.size--;
+        return true;
+    }
+
+    // Saca del libro y devuelve las órdenes que se disparan con este precio, primero las de precio más cercano.
+    public synchronized List<Order> trigger(int price) {
+        var below = this.below.isEmpty() ? this.below : this.below.tailMap(price, true);
+        var above = this.above.isEmpty() ? this.above : this.above.headMap(price, true).descendingMap();
+        if (below.isEmpty() && above.isEmpty()) {
+            return List.of();
+        }
+        var triggered = new ArrayList<Order>();
+        this.drain(below, triggered);
+        this.drain(above, triggered);
+        this.size -= triggered.size();
+        return triggered;
+    }
+
+    public synchronized int size() {
+        return this.size;
+    }
+
+    private void drain(NavigableMap<Integer, Map<Long, Order>> levels, List<Order> triggered) {
+        for (var level : levels.values()) {
+            triggered.addAll(level.values());
+        }
+        levels.clear();
+    }
+
+    private TreeMap<Integer, Map<Long, Order>> side(Order order) {
+        return triggersBelow(order) ? this.below : this.above;
+    }
+
+    private static boolean triggersBelow(Order order) {
+        return (order.type() == OrderType.LIMIT) == (order.action() == TradeAction.BUY);
+    }
+}
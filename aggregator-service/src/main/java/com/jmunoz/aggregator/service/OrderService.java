@@ -0,0 +1,234 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.advice.ApplicationExceptionHandler;
+import com.jmunoz.aggregator.domain.DeliveryPolicy;
+import com.jmunoz.aggregator.domain.OrderState;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.Order;
+import com.jmunoz.aggregator.dto.OrderRequest;
+import com.jmunoz.aggregator.dto.PriceEvent;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import com.jmunoz.aggregator.exceptions.ApplicationExceptions;
+import com.jmunoz.aggregator.validator.RequestValidator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Órdenes límite y stop que se ejecutan solas cuando el stream de precios llega a su precio.
+//
+// Las órdenes esperan en un OrderBook por ticker. Cada precio del stream solo mira el libro de su ticker y
+// saca de él las órdenes que dispara (ver OrderBook), así que el coste por precio no depende de cuántas órdenes
+// esperan. Las órdenes disparadas se ejecutan al precio que las ha disparado, con como mucho executionConcurrency
+// trades a la vez contra customer-service; el resto espera en cola sin frenar el stream de precios.
+//
+// Solo estamos subscritos al hub de precios mientras hay órdenes esperando.
+// Al subscribirnos, el hub repite el último precio de cada ticker: si es más antiguo que stock.price-store.max-staleness
+// (ver LastPriceStore) no dispara nada, para no ejecutar órdenes a un precio que ya no es el de mercado.
+@Service
+public class OrderService {
+
+    private static final Ticker[] TICKERS = Ticker.values();
+
+    private final StockPriceStreamService stockPriceStreamService;
+    private final CustomerPortfolioService customerPortfolioService;
+    private final LastPriceStore lastPriceStore;
+    private final Duration resubscribeDelay;
+
+    // Indexados por Ticker.ordinal().
+    private final OrderBook[] books = new OrderBook[TICKERS.length];
+
+    // Órdenes activas (OPEN y TRIGGERED) con su último estado. Las que terminan salen del mapa.
+    private final Map<Long, Order> activeOrders = new ConcurrentHashMap<>();
+    // Las últimas finishedMaxSize órdenes terminadas (FILLED, REJECTED y CANCELLED), para que GET siga
+    // encontrándolas. LinkedHashMap en orden de inserción: se olvidan primero las que terminaron antes. Guardado por sí mismo.
+    private final LinkedHashMap<Long, Order> finishedOrders;
+    private final AtomicLong orderIds = new AtomicLong();
+
+    // Cada cambio de estado de cada orden.
+    private final Sinks.Many<Order> updates = Sinks.many().multicast().directBestEffort();
+    // Órdenes disparadas pendientes de ejecutar, con el precio que las ha disparado.
+    private final Sinks.Many<Execution> executions = Sinks.many().unicast().onBackpressureBuffer();
+
+    private final Counter filled;
+    private final Counter rejected;
+
+    // Protegido por this.
+    private Disposable feed;
+
+    public OrderService(StockPriceStreamService stockPriceStreamService,
+                        CustomerPortfolioService customerPortfolioService,
+                        LastPriceStore lastPriceStore,
+                        MeterRegistry meterRegistry,
+                        @Value("${customer.orders.execution-concurrency}") int executionConcurrency,
+                        @Value("${customer.orders.resubscribe-delay}") Duration resubscribeDelay,
+                        @Value("${customer.orders.finished-max-size}") int finishedMaxSize) {
+        this.stockPriceStreamService = stockPriceStreamService;
+        this.customerPortfolioService = customerPortfolioService;
+        this.lastPriceStore = lastPriceStore;
+        this.resubscribeDelay = resubscribeDelay;
+        Arrays.setAll(this.books, i -> new OrderBook());
+        this.finishedOrders = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Order> eldest) {
+                return this.size() > finishedMaxSize;
+            }
+        };
+        this.filled = meterRegistry.counter("customer.orders.executions", "result", "filled");
+        this.rejected = meterRegistry.counter("customer.orders.executions", "result", "rejected");
+        meterRegistry.gauge("customer.orders.resting", this, OrderService::resting);
+        this.executions.asFlux()
+                .flatMap(this::execute, executionConcurrency)
+                .subscribe();
+    }
+
+    public Mono<Order> place(Integer customerId, OrderRequest request) {
+        return Mono.just(request)
+                .transform(RequestValidator.validateOrder())
+                .map(req -> Order.open(this.orderIds.incrementAndGet(), customerId, req))
+                .doOnNext(order -> {
+                    // Publicamos OPEN antes de que un precio pueda dispararla.
+                    this.activeOrders.put(order.id(), order);
+                    this.publish(order);
+                    this.books[order.ticker().ordinal()].add(order);
+                    this.startFeed();
+                });
+    }
+
+    // Solo se pueden cancelar las órdenes que siguen esperando (OPEN).
+    // Si la orden ya se ha disparado, se devuelve tal cual: su estado indica que no se ha cancelado.
+    public Mono<Order> cancel(Integer customerId, Long orderId) {
+        return this.getOrder(customerId, orderId)
+                .map(order -> {
+                    if (order.state() != OrderState.OPEN || !this.books[order.ticker().ordinal()].remove(order)) {
+                        return this.activeOrders.getOrDefault(orderId, order);
+                    }
+                    var cancelled = order.withState(OrderState.CANCELLED);
+                    this.finish(cancelled);
+                    this.stopFeedIfIdle();
+                    return cancelled;
+                });
+    }
+
+    // Las órdenes activas y las últimas customer.orders.finished-max-size terminadas, con su estado final.
+    public Mono<Order> getOrder(Integer customerId, Long orderId) {
+        return Mono.justOrEmpty(this.activeOrders.get(orderId))
+                .switchIfEmpty(Mono.fromSupplier(() -> this.finishedOrder(orderId)))
+                .filter(order -> order.customerId().equals(customerId))
+                .switchIfEmpty(ApplicationExceptions.orderNotFound(orderId));
+    }
+
+    // Primero las órdenes activas del cliente y después cada cambio de estado de sus órdenes.
+    // Nos enganchamos a los cambios antes de leer las activas, así no se pierde ninguno entre medias.
+    public Flux<Order> orderUpdates(Integer customerId) {
+        var active = Flux.defer(() -> Flux.fromStream(this.activeOrders.values().stream()
+                .filter(order -> order.customerId().equals(customerId))
+                .sorted(Comparator.comparing(Order::id))));
+        return Flux.merge(this.updates.asFlux().filter(order -> order.customerId().equals(customerId)), active);
+    }
+
+    private void onPrice(PriceUpdate priceUpdate) {
+        var triggered = this.books[priceUpdate.ticker().ordinal()].trigger(priceUpdate.price());
+        if (triggered.isEmpty()) {
+            return;
+        }
+        for (var order : triggered) {
+            var execution = new Execution(order.withState(OrderState.TRIGGERED), priceUpdate.price());
+            this.activeOrders.put(order.id(), execution.order());
+            this.publish(execution.order());
+            this.executions.emitNext(execution, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+        }
+        this.stopFeedIfIdle();
+    }
+
+    // Un trade que falla (por ejemplo, sin saldo suficiente) rechaza la orden con el mismo error que daría el trade.
+    private Mono<Order> execute(Execution execution) {
+        var order = execution.order();
+        return this.customerPortfolioService.trade(order.customerId(), order.toTradeRequest(), execution.price())
+                .map(order::filled)
+                .doOnNext(o -> this.filled.increment())
+                .onErrorResume(ex -> Mono.just(order.rejected(ApplicationExceptionHandler.toProblemDetail(ex)))
+                        .doOnNext(o -> this.rejected.increment()))
+                .doOnNext(this::finish);
+    }
+
+    // Primero la guardamos como terminada y después la quitamos de las activas, así GET la encuentra siempre.
+    private void finish(Order order) {
+        synchronized (this.finishedOrders) {
+            this.finishedOrders.put(order.id(), order);
+        }
+        this.activeOrders.remove(order.id());
+        this.publish(order);
+    }
+
+    private Order finishedOrder(Long orderId) {
+        synchronized (this.finishedOrders) {
+            return this.finishedOrders.get(orderId);
+        }
+    }
+
+    // Si stock-service termina el stream (o falla, o el hub nos desconecta), volvemos a subscribirnos pasado
+    // resubscribeDelay, desde el último id de evento: el hub nos da primero los precios publicados mientras tanto
+    // que aún guarda (ver stock.price-stream.resume-buffer-size), así un precio que cruza el de una orden y vuelve
+    // atrás durante el hueco también la dispara. Si el hueco es más largo que ese buffer, se pierden los más antiguos.
+    // Con CONFLATE un precio que cruza el de una orden podría sustituirse por el siguiente sin llegar a mirarse.
+    // Solo la primera subscripción de cada feed recibe el último precio de cada ticker (el filtro fresh); el
+    // último id es por feed, así que un feed nuevo no reanuda con los precios de cuando no había órdenes.
+    // El precio que repite el hub llega dentro de subscribe() y puede disparar todas las órdenes antes de que
+    // tengamos feed, así que volvemos a comprobar si quedan órdenes una vez asignado.
+    private synchronized void startFeed() {
+        if (Objects.isNull(this.feed)) {
+            var lastEventId = new AtomicReference<Long>();
+            this.feed = Flux.defer(() -> {
+                        var resumeFrom = lastEventId.get();
+                        var events = this.stockPriceStreamService.priceEventStream(null, DeliveryPolicy.DISCONNECT, resumeFrom);
+                        return Objects.isNull(resumeFrom) ? events.filter(e -> this.lastPriceStore.fresh(e.priceUpdate())) : events;
+                    })
+                    .doOnNext(e -> lastEventId.set(e.id()))
+                    .map(PriceEvent::priceUpdate)
+                    .repeatWhen(completed -> completed.delayElements(this.resubscribeDelay))
+                    .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, this.resubscribeDelay))
+                    .subscribe(this::onPrice);
+            this.stopFeedIfIdle();
+        }
+    }
+
+    private synchronized void stopFeedIfIdle() {
+        if (Objects.nonNull(this.feed) && this.resting() == 0) {
+            this.feed.dispose();
+            this.feed = null;
+        }
+    }
+
+    private int resting() {
+        var resting = 0;
+        for (var book : this.books) {
+            resting += book.size();
+        }
+        return resting;
+    }
+
+    // Las órdenes pueden cambiar de estado a la vez en distintos hilos, así que reintentamos si otro hilo está emitiendo.
+    private void publish(Order order) {
+        this.updates.emitNext(order, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100)));
+    }
+
+    private record Execution(Order order,
+                             Integer price) {
+    }
+}
@@ -0,0 +1,87 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
+import com.jmunoz.aggregator.dto.CustomerInformation;
+import com.jmunoz.aggregator.dto.HoldingValue;
+import com.jmunoz.aggregator.dto.PortfolioValue;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import com.jmunoz.aggregator.dto.StockTradeResponse;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Set;
+
+// Valoración del portfolio de un customer, que se va actualizando de forma incremental.
+// Cuando cambia el precio de un ticker solo se recalcula lo que aporta ese holding, no se vuelve a sumar to-do.
+// No es thread-safe: cada subscripción tiene la suya y los eventos le llegan en secuencia.
+class PortfolioValuation {
+
+    private static final Ticker[] TICKERS = Ticker.values();
+
+    private final Integer customerId;
+    private int balance;
+    private int holdingsValue;
+
+    // Indexados por Ticker.ordinal(). Un precio 0 significa que aún no lo conocemos.
+    private final int[] quantities = new int[TICKERS.length];
+    private final int[] prices = new int[TICKERS.length];
+
+    PortfolioValuation(CustomerInformation customerInformation) {
+        this.customerId = customerInformation.id();
+        this.balance = customerInformation.balance();
+        customerInformation.holdings().forEach(h -> this.quantities[h.ticker().ordinal()] = h.quantity());
+    }
+
+    Set<Ticker> heldTickers() {
+        var tickers = EnumSet.noneOf(Ticker.class);
+        for (var ticker : TICKERS) {
+            if (this.quantities[ticker.ordinal()] > 0) {
+                tickers.add(ticker);
+            }
+        }
+        return tickers;
+    }
+
+    // Devuelve true si el valor del portfolio ha cambiado.
+    boolean apply(Object event) {
+        return switch (event) {
+            case PriceUpdate p -> this.price(p.ticker(), p.price());
+            case StockTradeResponse r -> this.trade(r);
+            default -> false;
+        };
+    }
+
+    boolean price(Ticker ticker, int price) {
+        var i = ticker.ordinal();
+        var previous = this.prices[i];
+        this.prices[i] = price;
+        this.holdingsValue += this.quantities[i] * (price - previous);
+        return this.quantities[i] > 0 && price != previous;
+    }
+
+    // La respuesta del trade ya trae el nuevo balance y la cantidad operada, así que no hace falta
+    // volver a pedir la información del customer.
+    private boolean trade(StockTradeResponse response) {
+        var i = response.ticker().ordinal();
+        var quantity = response.action() == TradeAction.BUY ? response.quantity() : -response.quantity();
+        this.quantities[i] += quantity;
+        this.holdingsValue += quantity * this.prices[i];
+        if (response.price() != this.prices[i]) {
+            this.price(response.ticker(), response.price());
+        }
+        this.balance = response.balance();
+        return true;
+    }
+
+    PortfolioValue value() {
+        var holdings = new ArrayList<HoldingValue>();
+        for (var ticker : TICKERS) {
+            var i = ticker.ordinal();
+            if (this.quantities[i] > 0) {
+                holdings.add(new HoldingValue(ticker, this.quantities[i], this.prices[i], this.quantities[i] * this.prices[i]));
+            }
+        }
+        return new PortfolioValue(this.customerId, this.balance, this.holdingsValue, this.balance + this.holdingsValue, holdings);
+    }
+}
@@ -0,0 +1,115 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.domain.DeliveryPolicy;
+import com.jmunoz.aggregator.dto.PortfolioValue;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Objects;
+
+// Valoración del portfolio de un customer con los precios actuales.
+@Service
+public class PortfolioValuationService {
+
+    // Primer evento de cada subscripción: cargar la valoración.
+    private static final Object LOAD = new Object();
+
+    private final CustomerPortfolioService customerPortfolioService;
+    private final StockPriceStreamService stockPriceStreamService;
+
+    public PortfolioValuationService(CustomerPortfolioService customerPortfolioService,
+                                     StockPriceStreamService stockPriceStreamService) {
+        this.customerPortfolioService = customerPortfolioService;
+        this.stockPriceStreamService = stockPriceStreamService;
+    }
+
+    public Mono<PortfolioValue> getPortfolioValue(Integer customerId) {
+        return this.valuation(customerId)
+                .map(PortfolioValuation::value);
+    }
+
+    // La información del customer se pide una sola vez por subscripción.
+    // Después, cada precio nuevo solo recalcula lo que aporta su holding, y cada trade del customer
+    // actualiza balance y cantidades a partir de su respuesta.
+    // Nos subscribimos a los trades antes de la primera carga (LOAD) para no perder ninguno, y como en
+    // CustomerStreamService solo aplicamos un trade si sabemos que la información cargada no lo incluye:
+    // - El trade terminó antes de empezar la carga: ya lo incluye y no cambia nada.
+    // - El trade empezó después de terminar la carga: no lo incluye y lo aplicamos.
+    // - Si no (trades a la vez que la carga), volvemos a cargar la valoración.
+    // Solo se emite cuando el valor del portfolio cambia.
+    public Flux<PortfolioValue> portfolioValueStream(Integer customerId) {
+        return Flux.defer(() -> {
+            var state = new State();
+            var trades = this.customerPortfolioService.completedTrades(customerId)
+                    .cast(Object.class)
+                    .startWith(LOAD)
+                    .onBackpressureBuffer();
+            var prices = this.stockPriceStreamService.priceUpdateStream(null, DeliveryPolicy.CONFLATE)
+                    .cast(Object.class);
+            // concatMap procesa los eventos de uno en uno (también durante una carga), así que la valoración no
+            // se modifica desde dos hilos a la vez. Con prefetch 1 los precios se siguen agrupando en el hub.
+            return Flux.merge(1, trades, prices)
+                    .concatMap(event -> this.apply(customerId, state, event), 0)
+                    .distinctUntilChanged();
+        });
+    }
+
+    private Mono<PortfolioValue> apply(Integer customerId, State state, Object event) {
+        return switch (event) {
+            case CompletedTrade trade -> this.trade(customerId, state, trade);
+            case PriceUpdate priceUpdate -> Objects.nonNull(state.valuation) && state.valuation.apply(priceUpdate)
+                    ? Mono.just(state.valuation.value())
+                    : Mono.empty();
+            default -> this.load(customerId, state);
+        };
+    }
+
+    private Mono<PortfolioValue> trade(Integer customerId, State state, CompletedTrade trade) {
+        if (trade.completedAt() - state.loadStartedAt < 0) {
+            return Mono.empty();
+        }
+        if (trade.startedAt() - state.loadedAt > 0) {
+            state.valuation.apply(trade.response());
+            return Mono.just(state.valuation.value());
+        }
+        return this.load(customerId, state);
+    }
+
+    private Mono<PortfolioValue> load(Integer customerId, State state) {
+        return Mono.defer(() -> {
+            var startedAt = System.nanoTime();
+            return this.valuation(customerId)
+                    .map(valuation -> {
+                        state.valuation = valuation;
+                        state.loadStartedAt = startedAt;
+                        state.loadedAt = System.nanoTime();
+                        return valuation.value();
+                    });
+        });
+    }
+
+    // Precio inicial de cada ticker que tiene el customer.
+    private Mono<PortfolioValuation> valuation(Integer customerId) {
+        return this.customerPortfolioService.getCustomerInformation(customerId)
+                .map(PortfolioValuation::new)
+                .flatMap(valuation -> Flux.fromIterable(valuation.heldTickers())
+                        .flatMap(ticker -> this.customerPortfolioService.getStockPrice(ticker)
+                                .map(price -> Map.entry(ticker, price)))
+                        .collectList()
+                        .map(prices -> {
+                            prices.forEach(e -> valuation.price(e.getKey(), e.getValue()));
+                            return valuation;
+                        }));
+    }
+
+    // La valoración actual y System.nanoTime() de cuándo empezó y terminó su carga.
+    private static class State {
+
+        private PortfolioValuation valuation;
+        private long loadStartedAt;
+        private long loadedAt;
+    }
+}
@@ -0,0 +1,106 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.PriceEvent;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Últimos precios de un ticker con su id de evento, para reanudar el stream con Last-Event-ID.
+// Buffer circular sobre arrays reservados al crearlo: guardar un precio no crea ningún objeto (sus frames ya se
+// codificaron al publicarlo y solo guardamos las referencias). Los PriceEvent solo se crean al leer.
+// Escribe un solo hilo (el upstream del hub) y solo se lee al reconectar, así que basta con synchronized.
+class PriceEventRing {
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final Ticker ticker;
+    private final long[] ids;
+    private final int[] prices;
+    // PriceUpdate.time en nanosegundos desde epoch (UTC), entre los años 1677 y 2262. Fuera de ese rango se guarda
+    // como NO_TIME, igual que un precio sin time: al reanudar, el PriceEvent llega sin time (sus frames, codificados
+    // al publicarlo, sí lo llevan).
+    private final long[] times;
+    private final byte[][] sseFrames;
+    private final byte[][] socketFrames;
+    private final byte[][] frames;
+
+    // Precios guardados desde el principio. El más reciente está en (count - 1) % capacity.
+    private long count;
+    // Id del último precio sobrescrito (0 si aún no se ha sobrescrito ninguno).
+    private long overwrittenId;
+
+    PriceEventRing(Ticker ticker, int capacity) {
+        this.ticker = ticker;
+        this.ids = new long[capacity];
+        this.prices = new int[capacity];
+        this.times = new long[capacity];
+        this.sseFrames = new byte[capacity][];
+        this.socketFrames = new byte[capacity][];
+        this.frames = new byte[capacity][];
+    }
+
+    synchronized void add(PriceEvent event) {
+        var i = (int) (this.count % this.ids.length);
+        if (this.count >= this.ids.length) {
+            this.overwrittenId = this.ids[i];
+        }
+        var priceUpdate = event.priceUpdate();
+        this.ids[i] = event.id();
+        this.prices[i] = priceUpdate.price();
+        this.times[i] = toNanos(priceUpdate.time());
+        this.sseFrames[i] = event.sseFrame();
+        this.socketFrames[i] = event.socketFrame();
+        this.frames[i] = event.frame();
+        this.count++;
+    }
+
+    synchronized PriceEvent latest() {
+        return this.count == 0 ? null : this.event((int) ((this.count - 1) % this.ids.length));
+    }
+
+    // Precios con afterId < id < beforeId, en orden.
+    synchronized List<PriceEvent> between(long afterId, long beforeId) {
+        var events = new ArrayList<PriceEvent>();
+        var oldest = Math.max(0, this.count - this.ids.length);
+        for (long n = oldest; n < this.count; n++) {
+            var i = (int) (n % this.ids.length);
+            if (this.ids[i] > afterId && this.ids[i] < beforeId) {
+                events.add(this.event(i));
+            }
+        }
+        return events;
+    }
+
+    // false si ya se ha sobrescrito algún precio posterior a afterId: no se puede reanudar sin huecos.
+    synchronized boolean retainsAfter(long afterId) {
+        return this.overwrittenId <= afterId;
+    }
+
+    private PriceEvent event(int i) {
+        var time = this.times[i] == NO_TIME ? null : fromNanos(this.times[i]);
+        return new PriceEvent(this.ids[i], new PriceUpdate(this.ticker, this.prices[i], time), this.sseFrames[i], this.socketFrames[i],
+                this.frames[i]);
+    }
+
+    private static long toNanos(LocalDateTime time) {
+        if (Objects.isNull(time)) {
+            return NO_TIME;
+        }
+        var instant = time.toInstant(ZoneOffset.UTC);
+        try {
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+        } catch (ArithmeticException e) {
+            return NO_TIME;
+        }
+    }
+
+    private static LocalDateTime fromNanos(long nanos) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L)), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,99 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.domain.DeliveryPolicy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Estadísticas de un subscriber del stream de precios.
+// Se exponen por política, no por subscriber: un id por conexión crearía meters nuevos con cada conexión.
+// - price.stream.subscriber.lag: distribución de los precios pendientes de entregar (sin contar los descartados),
+//   medidos en cada precio que se entrega. 0 si el subscriber va al día.
+// - price.stream.subscriber.conflated: precios descartados porque el subscriber iba lento.
+// Con perSubscriberGauges (stock.price-stream.metrics.per-subscriber, para depurar), además tres gauges
+// etiquetados con el id del subscriber mientras dure la subscripción.
+class PriceStreamSubscriber {
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private final long id = IDS.incrementAndGet();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final DistributionSummary lagSummary;
+    private final Counter conflatedCounter;
+    private final MeterRegistry registry;
+    private final List<Meter> meters;
+
+    PriceStreamSubscriber(MeterRegistry registry, DeliveryPolicy policy, boolean perSubscriberGauges) {
+        this.registry = registry;
+        this.lagSummary = DistributionSummary.builder("price.stream.subscriber.lag")
+                .description("Price updates waiting to be delivered to a subscriber, sampled at each delivery")
+                .tag("policy", policy.name())
+                .register(registry);
+        this.conflatedCounter = Counter.builder("price.stream.subscriber.conflated")
+                .description("Price updates conflated or dropped because the subscriber was too slow")
+                .tag("policy", policy.name())
+                .register(registry);
+        this.meters = perSubscriberGauges ? this.registerGauges(policy) : List.of();
+    }
+
+    private List<Meter> registerGauges(DeliveryPolicy policy) {
+        var tags = Tags.of("subscriber", String.valueOf(this.id), "policy", policy.name());
+        return List.of(
+                Gauge.builder("price.stream.subscriber.detail.lag", this, PriceStreamSubscriber::lag)
+                        .description("Price updates received but not yet delivered, including conflated ones")
+                        .tags(tags)
+                        .register(this.registry),
+                Gauge.builder("price.stream.subscriber.detail.conflated", this, PriceStreamSubscriber::conflated)
+                        .description("Price updates conflated or dropped because the subscriber was too slow")
+                        .tags(tags)
+                        .register(this.registry),
+                Gauge.builder("price.stream.subscriber.detail.buffer", this, PriceStreamSubscriber::bufferDepth)
+                        .description("Price updates waiting in the subscriber buffer")
+                        .tags(tags)
+                        .register(this.registry)
+        );
+    }
+
+    long id() {
+        return this.id;
+    }
+
+    void onReceived() {
+        this.received.incrementAndGet();
+    }
+
+    void onDelivered() {
+        this.delivered.incrementAndGet();
+        this.lagSummary.record(this.bufferDepth());
+    }
+
+    void onDropped() {
+        this.dropped.incrementAndGet();
+        this.conflatedCounter.increment();
+    }
+
+    double lag() {
+        return this.received.get() - this.delivered.get();
+    }
+
+    double conflated() {
+        return this.dropped.get();
+    }
+
+    double bufferDepth() {
+        return this.received.get() - this.delivered.get() - this.dropped.get();
+    }
+
+    // Al terminar la subscripción quitamos sus gauges del registry.
+    void close() {
+        this.meters.forEach(this.registry::remove);
+    }
+}
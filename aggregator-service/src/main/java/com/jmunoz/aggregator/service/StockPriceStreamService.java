@@ -0,0 +1,339 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.client.StockServiceClient;
+import com.jmunoz.aggregator.codec.PriceSocketFrames;
+import com.jmunoz.aggregator.codec.PriceUpdateFrames;
+import com.jmunoz.aggregator.codec.PriceUpdateSseFrames;
+import com.jmunoz.aggregator.domain.DeliveryPolicy;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.PriceEvent;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import com.jmunoz.aggregator.dto.UpstreamStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Hub de precios repartido por ticker.
+// Solo hay una conexión con stock-service (Hot Publisher), pero en vez de entregar todos los precios a todos
+// los subscribers, cada precio se publica en el canal de su ticker.
+// Un subscriber que solo quiere GOOGLE se engancha solo al canal de GOOGLE y no recibe (ni filtra) el resto.
+//
+// El hub cuenta sus subscribers: se subscribe a stock-service con el primero y se desubscribe idleGracePeriod después
+// de irse el último, por si vuelve a llegar alguien. Mientras, LastPriceStore se sigue alimentando. Con hold() se
+// puede mantener conectado un rato sin subscribers (ver CustomerPortfolioService).
+@Service
+public class StockPriceStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(StockPriceStreamService.class);
+
+    private final StockServiceClient stockServiceClient;
+    private final LastPriceStore lastPriceStore;
+    private final PriceUpdateSseFrames sseFrames;
+    private final PriceSocketFrames socketFrames;
+    private final MeterRegistry meterRegistry;
+    private final int bufferSize;
+    private final int maxLag;
+    private final Duration idleGracePeriod;
+    private final boolean perSubscriberMetrics;
+
+    // Un canal por ticker, indexado por Ticker.ordinal().
+    // replay().latest() guarda el último precio de cada ticker para los nuevos subscribers.
+    // El último precio de cada ticker también se guarda en LastPriceStore, que sobrevive a las reconexiones.
+    // Si stock-service termina el stream, los canales se completan y se sustituyen por otros nuevos.
+    private volatile Sinks.Many<PriceEvent>[] channels;
+
+    // Los últimos precios de cada ticker con su id, para reanudar el stream (Last-Event-ID).
+    // Sobreviven a las reconexiones con stock-service. Indexados por Ticker.ordinal().
+    private final PriceEventRing[] rings;
+
+    // Ids de evento. Empiezan en el instante de arranque (en microsegundos), así los ids siguen creciendo
+    // aunque se reinicie el aggregator y un cliente no confunde los precios nuevos con los que ya tiene.
+    private final AtomicLong eventIds = new AtomicLong(TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+    private final Counter exactResumes;
+    private final Counter partialResumes;
+    private final Counter unknownResumes;
+
+    // Protegidos por this.
+    private int subscribers;
+    private Disposable upstream;
+    // System.nanoTime() hasta el que seguimos conectados sin subscribers, y el timer que lo comprueba.
+    private long idleUntil;
+    private Disposable idleTimer;
+
+    public StockPriceStreamService(StockServiceClient stockServiceClient,
+                                   LastPriceStore lastPriceStore,
+                                   PriceUpdateSseFrames sseFrames,
+                                   PriceSocketFrames socketFrames,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${stock.price-stream.buffer-size}") int bufferSize,
+                                   @Value("${stock.price-stream.max-lag}") int maxLag,
+                                   @Value("${stock.price-stream.resume-buffer-size}") int resumeBufferSize,
+                                   @Value("${stock.price-stream.idle-grace-period}") Duration idleGracePeriod,
+                                   @Value("${stock.price-stream.metrics.per-subscriber}") boolean perSubscriberMetrics) {
+        this.stockServiceClient = stockServiceClient;
+        this.lastPriceStore = lastPriceStore;
+        this.sseFrames = sseFrames;
+        this.socketFrames = socketFrames;
+        this.meterRegistry = meterRegistry;
+        this.bufferSize = bufferSize;
+        this.maxLag = maxLag;
+        this.idleGracePeriod = idleGracePeriod;
+        this.perSubscriberMetrics = perSubscriberMetrics;
+        this.rings = Arrays.stream(Ticker.values())
+                .map(ticker -> new PriceEventRing(ticker, resumeBufferSize))
+                .toArray(PriceEventRing[]::new);
+        this.exactResumes = resumeCounter(meterRegistry, "exact");
+        this.partialResumes = resumeCounter(meterRegistry, "partial");
+        this.unknownResumes = resumeCounter(meterRegistry, "unknown");
+        this.channels = this.newChannels();
+    }
+
+    private static Counter resumeCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("price.stream.resumes")
+                .description("Price stream subscriptions resumed with Last-Event-ID, by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    // Si no se indican tickers, el subscriber recibe todos.
+    public Flux<PriceUpdate> priceUpdateStream(Collection<Ticker> tickers, DeliveryPolicy policy) {
+        return this.priceEventStream(tickers, policy, null)
+                .map(PriceEvent::priceUpdate);
+    }
+
+    // Con lastEventId (el Last-Event-ID de una reconexión), el subscriber recibe primero los precios posteriores
+    // que aún guardamos, en orden de id, y después los nuevos, sin repetir ninguno.
+    // Sin lastEventId recibe el último precio de cada ticker y después los nuevos, como siempre.
+    public Flux<PriceEvent> priceEventStream(Collection<Ticker> tickers, DeliveryPolicy policy, Long lastEventId) {
+        var selected = Objects.isNull(tickers) || tickers.isEmpty() ? EnumSet.allOf(Ticker.class) : EnumSet.copyOf(tickers);
+        return Flux.defer(() -> {
+            var channels = this.channels;
+            var subscriber = new PriceStreamSubscriber(this.meterRegistry, policy, this.perSubscriberMetrics);
+            var acquired = new AtomicBoolean();
+            var resumeFrom = this.resumeFrom(selected, lastEventId);
+            var missed = this.missed(selected, resumeFrom);
+            var sources = selected.stream()
+                    .map(ticker -> this.live(ticker, channels[ticker.ordinal()], resumeFrom, missed)
+                            .doOnNext(p -> subscriber.onReceived()))
+                    .toList();
+            // Primero nos enganchamos a los canales y después conectamos con stock-service,
+            // así no se pierde ningún precio emitido durante la conexión.
+            // Con prefetch 1 no añadimos otro buffer delante del subscriber.
+            var connect = Mono.<PriceEvent>fromRunnable(() -> {
+                acquired.set(true);
+                this.acquire();
+            });
+            return Flux.fromIterable(missed)
+                    .doOnNext(p -> subscriber.onReceived())
+                    .concatWith(Flux.merge(1, this.deliver(sources, policy, subscriber), connect))
+                    .doOnNext(p -> subscriber.onDelivered())
+                    .doFinally(signal -> {
+                        subscriber.close();
+                        if (acquired.compareAndSet(true, false)) {
+                            this.release();
+                        }
+                    });
+        });
+    }
+
+    // Estado de la conexión con stock-service: el actual y después cada cambio.
+    public Flux<UpstreamStatus> upstreamStatuses() {
+        return this.stockServiceClient.priceStreamStatuses();
+    }
+
+    // Id a partir del cual reanudar, o null si no hay que reanudar.
+    // Un id mayor que el último que hemos dado no es nuestro (por ejemplo, si el reloj ha ido hacia atrás entre dos
+    // arranques): no reanudamos.
+    private Long resumeFrom(Collection<Ticker> tickers, Long lastEventId) {
+        if (Objects.isNull(lastEventId)) {
+            return null;
+        }
+        if (lastEventId > this.eventIds.get()) {
+            this.unknownResumes.increment();
+            return null;
+        }
+        var exact = tickers.stream().allMatch(ticker -> this.rings[ticker.ordinal()].retainsAfter(lastEventId));
+        (exact ? this.exactResumes : this.partialResumes).increment();
+        return lastEventId;
+    }
+
+    // Precios posteriores a resumeFrom que aún guardamos, de todos los tickers, en orden de id.
+    private List<PriceEvent> missed(Collection<Ticker> tickers, Long resumeFrom) {
+        if (Objects.isNull(resumeFrom)) {
+            return List.of();
+        }
+        return tickers.stream()
+                .flatMap(ticker -> this.rings[ticker.ordinal()].between(resumeFrom, Long.MAX_VALUE).stream())
+                .sorted(Comparator.comparingLong(PriceEvent::id))
+                .toList();
+    }
+
+    // Al reanudar, nos enganchamos al canal después de leer los precios perdidos, así que pueden haberse publicado
+    // más precios entre medias. El primero que llega por el canal es el más reciente, y todo lo anterior ya está
+    // en el buffer circular (se guarda antes de publicarse): rellenamos el hueco con él.
+    // Los precios que ya se entregaron (id no mayor que el último) se descartan.
+    private Flux<PriceEvent> live(Ticker ticker, Sinks.Many<PriceEvent> channel, Long resumeFrom, List<PriceEvent> missed) {
+        if (Objects.isNull(resumeFrom)) {
+            return channel.asFlux();
+        }
+        var ring = this.rings[ticker.ordinal()];
+        var last = new AtomicLong(missed.stream()
+                .filter(e -> e.priceUpdate().ticker() == ticker)
+                .mapToLong(PriceEvent::id)
+                .reduce(resumeFrom, Math::max));
+        return channel.asFlux()
+                .switchOnFirst((first, events) -> first.hasValue()
+                        ? Flux.fromIterable(ring.between(last.get(), first.get().id())).concatWith(events)
+                        : events)
+                .filter(e -> e.id() > last.get())
+                .doOnNext(e -> last.set(e.id()));
+    }
+
+    // Si el subscriber es lento, Reactor guardaría para él todos los precios sin límite.
+    // Según la política acotamos lo que se guarda por subscriber, para que la memoria no crezca con el más lento.
+    private Flux<PriceEvent> deliver(List<Flux<PriceEvent>> sources, DeliveryPolicy policy, PriceStreamSubscriber subscriber) {
+        return switch (policy) {
+            // Un único precio pendiente por ticker: el nuevo sustituye al anterior.
+            // Con prefetch 1, merge tampoco acumula más de un precio por ticker.
+            case CONFLATE -> {
+                var conflated = sources.stream()
+                        .map(f -> f.onBackpressureBuffer(1, p -> subscriber.onDropped(), BufferOverflowStrategy.DROP_OLDEST))
+                        .toList();
+                yield Flux.merge(Flux.fromIterable(conflated), conflated.size(), 1);
+            }
+            case DROP_OLDEST -> Flux.merge(sources)
+                    .onBackpressureBuffer(this.bufferSize, p -> subscriber.onDropped(), BufferOverflowStrategy.DROP_OLDEST);
+            case DISCONNECT -> Flux.merge(sources)
+                    .onBackpressureBuffer(this.maxLag, p -> log.warn("price stream subscriber {} is too slow. Disconnecting", subscriber.id()), BufferOverflowStrategy.ERROR);
+        };
+    }
+
+    // Conecta el hub (si no lo estaba) y lo mantiene conectado al menos duration, aunque no haya subscribers.
+    // Así LastPriceStore tiene precios recientes sin que nadie esté mirando el stream.
+    public synchronized void hold(Duration duration) {
+        if (duration.isZero()) {
+            return;
+        }
+        this.connect();
+        this.stayConnected(duration);
+    }
+
+    // Con el primer subscriber (o el primero tras terminar el stream) nos subscribimos a stock-service.
+    private synchronized void acquire() {
+        this.subscribers++;
+        this.connect();
+    }
+
+    // Cuando se va el último subscriber nos desubscribimos, pasado idleGracePeriod.
+    private synchronized void release() {
+        if (--this.subscribers == 0) {
+            this.stayConnected(this.idleGracePeriod);
+        }
+    }
+
+    private void connect() {
+        if (Objects.isNull(this.upstream)) {
+            log.info("connecting price hub to stock service price stream");
+            var subscription = this.stockServiceClient.priceUpdateStream()
+                    .subscribe(this::publish, this::error, this::complete);
+            // Si el stream ya ha terminado durante el subscribe, terminate() ha dejado upstream a null.
+            this.upstream = subscription.isDisposed() ? null : subscription;
+            this.lastPriceStore.streaming(Objects.nonNull(this.upstream));
+        }
+    }
+
+    private void stayConnected(Duration duration) {
+        var until = System.nanoTime() + duration.toNanos();
+        if (Objects.nonNull(this.idleTimer) && until - this.idleUntil <= 0) {
+            return;
+        }
+        this.idleUntil = until;
+        if (Objects.nonNull(this.idleTimer)) {
+            this.idleTimer.dispose();
+        }
+        this.idleTimer = Schedulers.parallel().schedule(this::disconnectIfIdle, duration.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    // Un timer anterior puede llegar tarde, después de que stayConnected() haya alargado el plazo.
+    private synchronized void disconnectIfIdle() {
+        if (this.subscribers > 0 || System.nanoTime() - this.idleUntil < 0) {
+            return;
+        }
+        this.idleTimer = null;
+        if (Objects.nonNull(this.upstream)) {
+            log.info("no price stream subscribers left. Disconnecting price hub");
+            this.upstream.dispose();
+            this.upstream = null;
+            this.lastPriceStore.streaming(false);
+        }
+    }
+
+    // Solo hay un upstream, así que las emisiones llegan en secuencia.
+    // El precio se guarda en el buffer circular antes de publicarse (ver live()).
+    // El frame SSE, el mensaje PRICE del WebSocket y el frame binario se codifican aquí, una vez por precio, y no en
+    // cada subscriber.
+    private void publish(PriceUpdate priceUpdate) {
+        var id = this.eventIds.incrementAndGet();
+        var event = new PriceEvent(id, priceUpdate, this.sseFrames.encode(id, priceUpdate),
+                this.socketFrames.encodePrice(id, priceUpdate), PriceUpdateFrames.encode(priceUpdate));
+        var i = priceUpdate.ticker().ordinal();
+        this.lastPriceStore.update(priceUpdate);
+        this.rings[i].add(event);
+        this.channels[i].tryEmitNext(event);
+    }
+
+    private void error(Throwable throwable) {
+        log.error("stock service price stream failed: {}", throwable.getMessage());
+        this.terminate(channel -> channel.tryEmitError(throwable));
+    }
+
+    private void complete() {
+        this.terminate(Sinks.Many::tryEmitComplete);
+    }
+
+    // El stream de stock-service ha terminado: terminamos los subscribers actuales y preparamos
+    // canales nuevos (con el último precio de cada ticker) para que el siguiente subscriber vuelva a conectar.
+    private void terminate(Consumer<Sinks.Many<PriceEvent>> signal) {
+        Sinks.Many<PriceEvent>[] terminated;
+        synchronized (this) {
+            terminated = this.channels;
+            this.channels = this.newChannels();
+            this.upstream = null;
+            this.lastPriceStore.streaming(false);
+        }
+        Arrays.stream(terminated).forEach(signal);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Sinks.Many<PriceEvent>[] newChannels() {
+        Sinks.Many<PriceEvent>[] channels = new Sinks.Many[Ticker.values().length];
+        for (var ticker : Ticker.values()) {
+            Sinks.Many<PriceEvent> channel = Sinks.many().replay().latest();
+            Optional.ofNullable(this.rings[ticker.ordinal()].latest()).ifPresent(channel::tryEmitNext);
+            channels[ticker.ordinal()] = channel;
+        }
+        return channels;
+    }
+}
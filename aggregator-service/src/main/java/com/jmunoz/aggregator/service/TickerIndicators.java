@@ -0,0 +1,182 @@
+package com.jmunoz.aggregator.service;
+
+import com.jmunoz.aggregator.config.IndicatorProperties;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.Indicators;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+
+// Indicadores de un ticker (SMA, EMA y TWAP), actualizados con cada precio en O(1) y sin crear objetos:
+// todo el estado son arrays de primitivos reservados al crear la instancia.
+//
+// - SMA: un buffer circular de N precios por ventana y su suma. Cada precio sustituye al más antiguo.
+//   Hasta tener N precios, es la media de los que hay.
+// - EMA: un double por periodo. El primer precio es el valor inicial.
+// - TWAP: un buffer circular de (tiempo, precio) por ventana con el área (precio x tiempo) entre precios consecutivos.
+//   Los precios que salen de la ventana restan su tramo del área, y el último que sale cubre el hueco entre el
+//   inicio de la ventana y el primer precio dentro de ella. Sacar precios es O(1) amortizado.
+//   Los tiempos son los de PriceUpdate.time (en nanos), así que la media es la misma aunque los precios lleguen
+//   con retraso o se reproduzcan más rápido.
+//
+// Los snapshots sí crean objetos, pero solo se piden cada cierto tiempo (ver IndicatorService).
+public class TickerIndicators {
+
+    private final Ticker ticker;
+
+    private final int[] smaWindows;
+    private final int[][] smaPrices;
+    private final long[] smaSums;
+
+    private final int[] emaPeriods;
+    private final double[] emaAlphas;
+    private final double[] emas;
+
+    private final Duration[] timeWindows;
+    private final long[] windowNanos;
+    private final long[][] windowTimes;
+    private final int[][] windowPrices;
+    private final int[] windowHeads;
+    private final int[] windowSizes;
+    private final long[] windowAreas;
+    // Último precio que ha salido de cada ventana: el que estaba vigente al inicio de la ventana. -1 si no hay.
+    private final int[] windowPrevious;
+
+    // Protegidos por this.
+    private long ticks;
+    private int lastPrice;
+    private long lastTimeNanos;
+
+    public TickerIndicators(Ticker ticker, IndicatorProperties properties) {
+        this.ticker = ticker;
+        this.smaWindows = properties.smaWindows().stream().mapToInt(Integer::intValue).toArray();
+        this.smaPrices = new int[this.smaWindows.length][];
+        for (int i = 0; i < this.smaWindows.length; i++) {
+            this.smaPrices[i] = new int[this.smaWindows[i]];
+        }
+        this.smaSums = new long[this.smaWindows.length];
+
+        this.emaPeriods = properties.emaPeriods().stream().mapToInt(Integer::intValue).toArray();
+        this.emaAlphas = new double[this.emaPeriods.length];
+        for (int i = 0; i < this.emaPeriods.length; i++) {
+            this.emaAlphas[i] = 2.0 / (this.emaPeriods[i] + 1);
+        }
+        this.emas = new double[this.emaPeriods.length];
+
+        this.timeWindows = properties.timeWindows().toArray(Duration[]::new);
+        var windows = this.timeWindows.length;
+        // Al menos dos: para sacar un precio de la ventana hace falta el siguiente.
+        var capacity = Math.max(2, properties.timeWindowCapacity());
+        this.windowNanos = new long[windows];
+        this.windowTimes = new long[windows][capacity];
+        this.windowPrices = new int[windows][capacity];
+        this.windowHeads = new int[windows];
+        this.windowSizes = new int[windows];
+        this.windowAreas = new long[windows];
+        this.windowPrevious = new int[windows];
+        for (int i = 0; i < windows; i++) {
+            this.windowNanos[i] = this.timeWindows[i].toNanos();
+            this.windowPrevious[i] = -1;
+        }
+    }
+
+    public synchronized void apply(int price, long timeNanos) {
+        for (int i = 0; i < this.smaWindows.length; i++) {
+            var slot = (int) (this.ticks % this.smaWindows[i]);
+            this.smaSums[i] += price - this.smaPrices[i][slot];
+            this.smaPrices[i][slot] = price;
+        }
+        for (int i = 0; i < this.emas.length; i++) {
+            this.emas[i] = this.ticks == 0 ? price : this.emas[i] + this.emaAlphas[i] * (price - this.emas[i]);
+        }
+        for (int i = 0; i < this.windowNanos.length; i++) {
+            this.applyWindow(i, price, timeNanos);
+        }
+        this.ticks++;
+        this.lastPrice = price;
+        this.lastTimeNanos = timeNanos;
+    }
+
+    public synchronized Indicators snapshot() {
+        if (this.ticks == 0) {
+            return new Indicators(this.ticker, null, null, 0L, null, null, null);
+        }
+        var sma = new LinkedHashMap<String, Double>();
+        for (int i = 0; i < this.smaWindows.length; i++) {
+            sma.put(Integer.toString(this.smaWindows[i]), (double) this.smaSums[i] / Math.min(this.ticks, this.smaWindows[i]));
+        }
+        var ema = new LinkedHashMap<String, Double>();
+        for (int i = 0; i < this.emaPeriods.length; i++) {
+            ema.put(Integer.toString(this.emaPeriods[i]), this.emas[i]);
+        }
+        var twap = new LinkedHashMap<String, Double>();
+        for (int i = 0; i < this.windowNanos.length; i++) {
+            twap.put(label(this.timeWindows[i]), this.twap(i));
+        }
+        var time = LocalDateTime.ofInstant(Instant.ofEpochSecond(0, this.lastTimeNanos), ZoneOffset.UTC);
+        return new Indicators(this.ticker, time, this.lastPrice, this.ticks, sma, ema, twap);
+    }
+
+    private void applyWindow(int i, int price, long timeNanos) {
+        var times = this.windowTimes[i];
+        var prices = this.windowPrices[i];
+        var capacity = times.length;
+        if (this.windowSizes[i] > 0) {
+            // Cerramos el tramo del último precio de la ventana hasta este.
+            var tail = (this.windowHeads[i] + this.windowSizes[i] - 1) % capacity;
+            this.windowAreas[i] += prices[tail] * Math.max(0, timeNanos - times[tail]);
+        }
+        if (this.windowSizes[i] == capacity) {
+            this.evict(i);
+        }
+        var slot = (this.windowHeads[i] + this.windowSizes[i]) % capacity;
+        times[slot] = timeNanos;
+        prices[slot] = price;
+        this.windowSizes[i]++;
+        var start = timeNanos - this.windowNanos[i];
+        while (this.windowSizes[i] > 1 && times[this.windowHeads[i]] < start) {
+            this.evict(i);
+        }
+    }
+
+    // Saca el precio más antiguo de la ventana, con su tramo hasta el siguiente.
+    private void evict(int i) {
+        var times = this.windowTimes[i];
+        var prices = this.windowPrices[i];
+        var head = this.windowHeads[i];
+        var next = (head + 1) % times.length;
+        this.windowAreas[i] -= prices[head] * Math.max(0, times[next] - times[head]);
+        this.windowPrevious[i] = prices[head];
+        this.windowHeads[i] = next;
+        this.windowSizes[i]--;
+    }
+
+    private double twap(int i) {
+        var first = this.windowTimes[i][this.windowHeads[i]];
+        if (this.windowPrevious[i] >= 0) {
+            var start = this.lastTimeNanos - this.windowNanos[i];
+            var area = this.windowAreas[i] + this.windowPrevious[i] * Math.max(0, first - start);
+            return (double) area / this.windowNanos[i];
+        }
+        // Aún no ha pasado una ventana entera desde el primer precio.
+        var elapsed = this.lastTimeNanos - first;
+        return elapsed <= 0 ? this.lastPrice : (double) this.windowAreas[i] / elapsed;
+    }
+
+    // 1h, 5m, 30s o 500ms.
+    static String label(Duration duration) {
+        if (duration.toMillis() % 3_600_000 == 0) {
+            return duration.toHours() + "h";
+        }
+        if (duration.toMillis() % 60_000 == 0) {
+            return duration.toMinutes() + "m";
+        }
+        if (duration.toMillis() % 1_000 == 0) {
+            return duration.toSeconds() + "s";
+        }
+        return duration.toMillis() + "ms";
+    }
+}
@@ -1,5 +1,6 @@
 package com.jmunoz.aggregator.validator;
 
+import com.jmunoz.aggregator.dto.OrderRequest;
 import com.jmunoz.aggregator.dto.TradeRequest;
 import com.jmunoz.aggregator.exceptions.ApplicationExceptions;
 import reactor.core.publisher.Mono;
@@ -21,6 +22,17 @@ public class RequestValidator {
                 .switchIfEmpty(ApplicationExceptions.invalidQuantity());
     }
 
+    // Una orden es un trade con tipo y precio: mismas validaciones que el trade y además el tipo y el precio.
+    public static UnaryOperator<Mono<OrderRequest>> validateOrder() {
+        return mono -> mono.flatMap(dto -> Mono.just(new TradeRequest(dto.ticker(), dto.action(), dto.quantity()))
+                        .transform(validate())
+                        .thenReturn(dto))
+                .filter(hasOrderType())
+                .switchIfEmpty(ApplicationExceptions.missingOrderType())
+                .filter(isValidPrice())
+                .switchIfEmpty(ApplicationExceptions.invalidPrice());
+    }
+
     private static Predicate<TradeRequest> hasTicker() {
         return dto -> Objects.nonNull(dto.ticker());
     }
@@ -32,4 +44,12 @@ public class RequestValidator {
     private static Predicate<TradeRequest> isValidQuantity() {
         return dto -> Objects.nonNull(dto.quantity()) && dto.quantity() > 0;
     }
+
+    private static Predicate<OrderRequest> hasOrderType() {
+        return dto -> Objects.nonNull(dto.type());
+    }
+
+    private static Predicate<OrderRequest> isValidPrice() {
+        return dto -> Objects.nonNull(dto.price()) && dto.price() > 0;
+    }
 }
@@ -0,0 +1,79 @@
+package com.jmunoz.aggregator.websocket;
+
+import com.jmunoz.aggregator.codec.PriceSocketFrames;
+import com.jmunoz.aggregator.domain.DeliveryPolicy;
+import com.jmunoz.aggregator.service.LastPriceStore;
+import com.jmunoz.aggregator.service.StockPriceStreamService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// WebSocket de precios: /stock/price-stream/ws (ver WebSocketConfig).
+// Con SSE, cambiar de tickers obliga a cerrar la conexión y abrir otra. Aquí el cliente cambia sus tickers
+// con mensajes sobre la misma conexión (ver PriceSocketRequest y PriceSocketMessage).
+//
+// Ejemplo: /stock/price-stream/ws?policy=DROP_OLDEST (por defecto CONFLATE, igual que en SSE).
+@Component
+public class PriceSocketHandler implements WebSocketHandler {
+
+    private final StockPriceStreamService stockPriceStreamService;
+    private final LastPriceStore lastPriceStore;
+    private final PriceSocketFrames frames;
+    private final int replyBufferSize;
+    private final Duration resubscribeDelay;
+    private final AtomicInteger sessions = new AtomicInteger();
+
+    public PriceSocketHandler(StockPriceStreamService stockPriceStreamService,
+                              LastPriceStore lastPriceStore,
+                              PriceSocketFrames frames,
+                              MeterRegistry meterRegistry,
+                              @Value("${stock.price-stream.websocket.reply-buffer-size}") int replyBufferSize,
+                              @Value("${stock.price-stream.websocket.resubscribe-delay}") Duration resubscribeDelay) {
+        this.stockPriceStreamService = stockPriceStreamService;
+        this.lastPriceStore = lastPriceStore;
+        this.frames = frames;
+        this.replyBufferSize = replyBufferSize;
+        this.resubscribeDelay = resubscribeDelay;
+        meterRegistry.gauge("stock.price-stream.websocket.sessions", this.sessions);
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        var policy = this.policy(session);
+        if (Objects.isNull(policy)) {
+            return session.close(CloseStatus.BAD_DATA.withReason("Invalid policy"));
+        }
+        var priceSocketSession = new PriceSocketSession(session, this.stockPriceStreamService, this.lastPriceStore,
+                this.frames, policy, this.replyBufferSize, this.resubscribeDelay);
+        return Mono.defer(() -> {
+                    this.sessions.incrementAndGet();
+                    return priceSocketSession.handle();
+                })
+                .doFinally(signal -> this.sessions.decrementAndGet());
+    }
+
+    // null si la política no existe.
+    private DeliveryPolicy policy(WebSocketSession session) {
+        var value = UriComponentsBuilder.fromUri(session.getHandshakeInfo().getUri())
+                .build()
+                .getQueryParams()
+                .getFirst("policy");
+        if (Objects.isNull(value)) {
+            return DeliveryPolicy.CONFLATE;
+        }
+        return Arrays.stream(DeliveryPolicy.values())
+                .filter(p -> p.name().equals(value))
+                .findFirst()
+                .orElse(null);
+    }
+}
@@ -0,0 +1,200 @@
+package com.jmunoz.aggregator.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.jmunoz.aggregator.codec.PriceSocketFrames;
+import com.jmunoz.aggregator.domain.DeliveryPolicy;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.PriceEvent;
+import com.jmunoz.aggregator.dto.PriceSocketMessage;
+import com.jmunoz.aggregator.dto.PriceSocketRequest;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import com.jmunoz.aggregator.service.LastPriceStore;
+import com.jmunoz.aggregator.service.StockPriceStreamService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Una sesión del WebSocket de precios.
+//
+// Los tickers subscritos son un bitset (un long, un bit por Ticker.ordinal()): subscribirse o desubscribirse solo
+// cambia bits (mientras quede algún ticker, sin tocar la subscripción al hub) y cada precio se filtra con una
+// operación de bits.
+// La sesión se engancha al hub (y así al único stream de stock-service) cuando tiene algún ticker subscrito y se
+// suelta cuando se desubscribe de todos, para no mantener el hub conectado sin nadie que reciba sus precios.
+// Si stock-service termina el stream, se vuelve a enganchar pasado resubscribeDelay reanudando desde el último id
+// visto, sin repetidos. Al volver a engancharse tras soltarse no se reanuda: recibe el último precio de cada ticker.
+//
+// Lo que se envía al cliente está acotado:
+// - Precios: según la política del hub (ver DeliveryPolicy). Con DISCONNECT, un cliente lento cierra la sesión.
+// - Respuestas: cola de replyBufferSize mensajes. Un cliente que envía mensajes sin leer las respuestas la llena
+//   y se cierra su sesión.
+class PriceSocketSession {
+
+    private static final Logger log = LoggerFactory.getLogger(PriceSocketSession.class);
+    private static final Ticker[] TICKERS = Ticker.values();
+    private static final long ALL_TICKERS = -1L >>> (Long.SIZE - TICKERS.length);
+
+    static {
+        if (TICKERS.length > Long.SIZE) {
+            throw new IllegalStateException("ticker bitset supports up to " + Long.SIZE + " tickers");
+        }
+    }
+
+    private final WebSocketSession session;
+    private final StockPriceStreamService stockPriceStreamService;
+    private final LastPriceStore lastPriceStore;
+    private final PriceSocketFrames frames;
+    private final DeliveryPolicy policy;
+    private final Duration resubscribeDelay;
+
+    private final Sinks.Many<PriceSocketMessage> replies;
+    // Si la sesión tiene algún ticker subscrito (y por tanto debe estar enganchada al hub).
+    private final Sinks.Many<Boolean> attached = Sinks.many().replay().latest();
+    private final Sinks.Empty<Void> closed = Sinks.empty();
+
+    // Solo los cambia el hilo que lee los mensajes del cliente.
+    private volatile long tickers;
+
+    PriceSocketSession(WebSocketSession session,
+                       StockPriceStreamService stockPriceStreamService,
+                       LastPriceStore lastPriceStore,
+                       PriceSocketFrames frames,
+                       DeliveryPolicy policy,
+                       int replyBufferSize,
+                       Duration resubscribeDelay) {
+        this.session = session;
+        this.stockPriceStreamService = stockPriceStreamService;
+        this.lastPriceStore = lastPriceStore;
+        this.frames = frames;
+        this.policy = policy;
+        this.resubscribeDelay = resubscribeDelay;
+        this.replies = Sinks.many().unicast().onBackpressureBuffer(new ArrayBlockingQueue<>(replyBufferSize));
+    }
+
+    Mono<Void> handle() {
+        var input = this.session.receive()
+                .map(WebSocketMessage::getPayloadAsText)
+                .doOnNext(this::onMessage)
+                .doFinally(signal -> this.closed.tryEmitEmpty())
+                .then();
+        // switchMap cancela la subscripción al hub (y la suelta) en cuanto la sesión se queda sin tickers.
+        var prices = this.attached.asFlux()
+                .distinctUntilChanged()
+                .switchMap(attached -> attached ? this.prices() : Flux.empty())
+                .filter(event -> contains(this.tickers, event.priceUpdate().ticker()))
+                .map(this::priceMessage);
+        var replies = this.replies.asFlux()
+                .map(this::message);
+        var output = this.session.send(Flux.merge(replies, prices).takeUntilOther(this.closed.asMono()));
+        return Mono.when(input, output);
+    }
+
+    // Precios del hub mientras la sesión está enganchada. lastEventId (el último id recibido) solo sirve para
+    // reanudar dentro de este enganche.
+    private Flux<PriceEvent> prices() {
+        return Flux.defer(() -> {
+            var lastEventId = new AtomicReference<Long>();
+            return Flux.defer(() -> this.stockPriceStreamService.priceEventStream(null, this.policy, lastEventId.get()))
+                    .doOnNext(event -> lastEventId.set(event.id()))
+                    .repeatWhen(completed -> completed.delayElements(this.resubscribeDelay));
+        });
+    }
+
+    private void onMessage(String text) {
+        PriceSocketRequest request;
+        try {
+            request = this.frames.read(text);
+        } catch (JsonProcessingException e) {
+            this.reply(PriceSocketMessage.error("Invalid message: " + e.getOriginalMessage()));
+            return;
+        }
+        if (Objects.isNull(request.type())) {
+            this.reply(PriceSocketMessage.error("Message type is required"));
+            return;
+        }
+        switch (request.type()) {
+            case SUBSCRIBE -> {
+                this.tickers |= bits(request.tickers());
+                this.reply(PriceSocketMessage.subscriptions(toSet(this.tickers)));
+                this.attached.tryEmitNext(this.tickers != 0);
+            }
+            case UNSUBSCRIBE -> {
+                this.tickers &= ~bits(request.tickers());
+                this.reply(PriceSocketMessage.subscriptions(toSet(this.tickers)));
+                this.attached.tryEmitNext(this.tickers != 0);
+            }
+            case SNAPSHOT -> {
+                var selected = isEmpty(request.tickers()) ? this.tickers : bits(request.tickers());
+                this.reply(PriceSocketMessage.snapshot(this.snapshot(selected)));
+            }
+        }
+    }
+
+    private List<PriceUpdate> snapshot(long selected) {
+        return toSet(selected).stream()
+                .map(this.lastPriceStore::latest)
+                .flatMap(Optional::stream)
+                .toList();
+    }
+
+    // Solo el hilo que lee los mensajes del cliente emite respuestas.
+    private void reply(PriceSocketMessage message) {
+        if (this.replies.tryEmitNext(message).isFailure()) {
+            log.warn("price socket session {} is not reading its replies. Closing", this.session.getId());
+            this.session.close(CloseStatus.POLICY_VIOLATION.withReason("Too many pending replies")).subscribe();
+        }
+    }
+
+    private WebSocketMessage priceMessage(PriceEvent event) {
+        return new WebSocketMessage(WebSocketMessage.Type.TEXT, PriceSocketFrames.price(event, this.session.bufferFactory()));
+    }
+
+    private WebSocketMessage message(PriceSocketMessage message) {
+        return new WebSocketMessage(WebSocketMessage.Type.TEXT, this.frames.message(message, this.session.bufferFactory()));
+    }
+
+    // Sin tickers, todos.
+    static long bits(Collection<Ticker> tickers) {
+        if (isEmpty(tickers)) {
+            return ALL_TICKERS;
+        }
+        var bits = 0L;
+        for (var ticker : tickers) {
+            bits |= 1L << ticker.ordinal();
+        }
+        return bits;
+    }
+
+    static boolean contains(long bits, Ticker ticker) {
+        return (bits & (1L << ticker.ordinal())) != 0;
+    }
+
+    static Set<Ticker> toSet(long bits) {
+        var set = EnumSet.noneOf(Ticker.class);
+        for (var ticker : TICKERS) {
+            if (contains(bits, ticker)) {
+                set.add(ticker);
+            }
+        }
+        return set;
+    }
+
+    private static boolean isEmpty(Collection<Ticker> tickers) {
+        return Objects.isNull(tickers) || tickers.isEmpty();
+    }
+}
@@ -14,11 +14,16 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 
 // El puerto cambia (es dinámico) y por eso indicamos ${mockServerPort} (ver documentación de MockServer).
+// Los tests comparten el contexto de Spring, así que no dejamos que las cachés de clientes guarden respuestas
+// de un test para otro (ver CustomerInformationCacheTest), ni que un trade deje el hub de precios conectado.
 @MockServerTest
 @AutoConfigureWebTestClient
 @SpringBootTest(properties = {
         "customer.service.url=http://localhost:${mockServerPort}",
-        "stock.service.url=http://localhost:${mockServerPort}"
+        "stock.service.url=http://localhost:${mockServerPort}",
+        "customer.information.cache.ttl=0s",
+        "customer.not-found.cache.ttl=0s",
+        "stock.price-store.hold-after-trade=0s"
 })
 abstract class AbstractIntegrationTest {
 
@@ -0,0 +1,43 @@
+package com.jmunoz.aggregator;
+
+import org.mockserver.matchers.Times;
+import org.mockserver.model.Delay;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+
+// Tests que usan el stream de precios de stock-service.
+// El hub y todo lo que se alimenta de él (órdenes, velas, indicadores...) guardan estado mientras viva el contexto
+// de Spring, y el stream se puede quedar abierto (o reintentando) entre tests. Por eso cada test empieza con un
+// contexto nuevo.
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+abstract class AbstractPriceStreamTest extends AbstractIntegrationTest {
+
+    // Stream de precios de stock-service con los precios del fichero indicado.
+    protected void mockPriceStream(String responseBodyPath) {
+        this.mockPriceStream("/stock/price-stream", responseBodyPath);
+    }
+
+    protected void mockPriceStream(String path, String responseBodyPath) {
+        this.mockPriceStream(path, responseBodyPath, Times.unlimited(), 0);
+    }
+
+    // Solo responde a la primera petición, después de delayMillis. Si hay varias, responden en el orden en que se crean.
+    protected void mockPriceStreamOnce(String path, String responseBodyPath, long delayMillis) {
+        this.mockPriceStream(path, responseBodyPath, Times.once(), delayMillis);
+    }
+
+    private void mockPriceStream(String path, String responseBodyPath, Times times, long delayMillis) {
+        var responseBody = this.resourceToString(responseBodyPath);
+        mockServerClient
+                .when(HttpRequest.request(path), times)
+                .respond(
+                        HttpResponse.response(responseBody)
+                                .withStatusCode(200)
+                                // El media type indicado se ve en Swagger.
+                                .withContentType(MediaType.parse("application/x-ndjson"))
+                                .withDelay(Delay.milliseconds(delayMillis))
+                );
+    }
+}
@@ -0,0 +1,143 @@
+package com.jmunoz.aggregator;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
+import com.jmunoz.aggregator.dto.TradeRequest;
+import org.junit.jupiter.api.Test;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.MediaType;
+import org.mockserver.verify.VerificationTimes;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+// La caché guarda los clientes mientras viva el contexto de Spring, así que cada test empieza con uno nuevo.
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@TestPropertySource(properties = {
+        "customer.information.cache.ttl=1m",
+        "customer.not-found.cache.ttl=1m"
+})
+public class CustomerInformationCacheTest extends AbstractIntegrationTest {
+
+    @Test
+    public void customerInformationIsCached() {
+        // given
+        mockCustomerInformation();
+
+        // then
+        // solo la primera petición llega a customer-service.
+        getCustomerInformation().jsonPath("$.balance").isEqualTo(10000);
+        getCustomerInformation().jsonPath("$.balance").isEqualTo(10000);
+
+        mockServerClient.verify(HttpRequest.request("/customers/1"), VerificationTimes.exactly(1));
+        this.client.get()
+                .uri("/actuator/metrics/customer.information.cache.requests?tag=result:hit")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.measurements[0].value").isEqualTo(1.0);
+    }
+
+    @Test
+    public void tradeUpdatesCachedCustomer() {
+        // given
+        mockCustomerInformation();
+        mockCustomerTrade();
+        getCustomerInformation();
+
+        // when
+        this.client.post()
+                .uri("/customers/1/trade")
+                .bodyValue(new TradeRequest(Ticker.GOOGLE, TradeAction.BUY, 2))
+                .exchange()
+                .expectStatus().isOk();
+
+        // then
+        // el trade se aplica a la información cacheada, sin volver a pedirla a customer-service.
+        getCustomerInformation()
+                .jsonPath("$.balance").isEqualTo(9780)
+                .jsonPath("$.holdings[0].ticker").isEqualTo("GOOGLE")
+                .jsonPath("$.holdings[0].quantity").isEqualTo(4);
+
+        mockServerClient.verify(HttpRequest.request("/customers/1"), VerificationTimes.exactly(1));
+    }
+
+    // Un cliente que no existe no vuelve a preguntarse a customer-service, ni para la información ni para un trade.
+    @Test
+    public void unknownCustomerIsCached() {
+        // given
+        mockServerClient
+                .when(HttpRequest.request("/customers/2"))
+                .respond(
+                        HttpResponse.response(this.resourceToString("customer-service/customer-information-404.json"))
+                                .withStatusCode(404)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+
+        // then
+        getUnknownCustomer();
+        getUnknownCustomer();
+        this.client.post()
+                .uri("/customers/2/trade")
+                .bodyValue(new TradeRequest(Ticker.GOOGLE, TradeAction.BUY, 2))
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("Customer [id=2] is not found");
+
+        mockServerClient.verify(HttpRequest.request("/customers/2"), VerificationTimes.exactly(1));
+        mockServerClient.verify(HttpRequest.request("/stock/GOOGLE"), VerificationTimes.never());
+        this.client.get()
+                .uri("/actuator/metrics/customer.not-found.cache.hits")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.measurements[0].value").isEqualTo(2.0);
+    }
+
+    private void getUnknownCustomer() {
+        this.client.get()
+                .uri("/customers/2")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("Customer [id=2] is not found");
+    }
+
+    private void mockCustomerInformation() {
+        var responseBody = this.resourceToString("customer-service/customer-information-200.json");
+        mockServerClient
+                .when(HttpRequest.request("/customers/1"))
+                .respond(
+                        HttpResponse.response(responseBody)
+                                .withStatusCode(200)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+    }
+
+    private void mockCustomerTrade() {
+        mockServerClient
+                .when(HttpRequest.request("/stock/GOOGLE"))
+                .respond(
+                        HttpResponse.response(this.resourceToString("stock-service/stock-price-200.json"))
+                                .withStatusCode(200)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+        mockServerClient
+                .when(HttpRequest.request("/customers/1/trade").withMethod("POST"))
+                .respond(
+                        HttpResponse.response(this.resourceToString("customer-service/customer-trade-200.json"))
+                                .withStatusCode(200)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+    }
+
+    private WebTestClient.BodyContentSpec getCustomerInformation() {
+        return this.client.get()
+                .uri("/customers/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody();
+    }
+}
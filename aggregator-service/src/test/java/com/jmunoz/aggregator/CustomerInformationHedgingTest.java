@@ -0,0 +1,60 @@
+package com.jmunoz.aggregator;
+
+import org.junit.jupiter.api.Test;
+import org.mockserver.matchers.Times;
+import org.mockserver.model.Delay;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.MediaType;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Duration;
+
+// Con el hedging habilitado, si la primera petición a customer-service tarda, la segunda responde antes.
+@TestPropertySource(properties = {
+        "customer.information.hedging.enabled=true",
+        "customer.information.hedging.min-delay=100ms",
+        "customer.information.hedging.max-rate=1.0"
+})
+public class CustomerInformationHedgingTest extends AbstractIntegrationTest {
+
+    @Test
+    public void slowRequestIsHedged() {
+        // given
+        // la primera petición tarda 2 segundos y la segunda responde enseguida.
+        var responseBody = this.resourceToString("customer-service/customer-information-200.json");
+        mockServerClient
+                .when(HttpRequest.request("/customers/1"), Times.once())
+                .respond(
+                        HttpResponse.response(responseBody)
+                                .withStatusCode(200)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                                .withDelay(Delay.seconds(2))
+                );
+        mockServerClient
+                .when(HttpRequest.request("/customers/1"))
+                .respond(
+                        HttpResponse.response(responseBody)
+                                .withStatusCode(200)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+
+        // then
+        this.client.mutate()
+                .responseTimeout(Duration.ofSeconds(1))
+                .build()
+                .get()
+                .uri("/customers/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Sam");
+
+        this.client.get()
+                .uri("/actuator/metrics/customer.information.hedges?tag=result:won")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.measurements[0].value").isEqualTo(1.0);
+    }
+}
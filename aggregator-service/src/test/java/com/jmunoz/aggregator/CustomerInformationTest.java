@@ -1,13 +1,17 @@
 package com.jmunoz.aggregator;
 
+import com.jmunoz.aggregator.dto.CustomerInformation;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockserver.model.HttpRequest;
 import org.mockserver.model.HttpResponse;
+import org.mockserver.model.JsonBody;
 import org.mockserver.model.MediaType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
 
 import java.util.Objects;
 
@@ -40,6 +44,52 @@ public class CustomerInformationTest extends AbstractIntegrationTest {
                 .jsonPath("$.title").isNotEmpty();
     }
 
+    // Varios clientes en una sola llamada a customer-service.
+    @Test
+    public void customersInformation() {
+        // given
+        var responseBody = this.resourceToString("customer-service/customers-information-200.jsonl");
+        mockServerClient
+                .when(HttpRequest.request("/customers/search")
+                        .withMethod("POST")
+                        .withBody(JsonBody.json("[1, 2]")))
+                .respond(
+                        HttpResponse.response(responseBody)
+                                .withStatusCode(200)
+                                .withContentType(MediaType.parse("application/x-ndjson"))
+                );
+
+        // then
+        this.client.get()
+                .uri("/customers?ids=1,2")
+                .accept(org.springframework.http.MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(CustomerInformation.class)
+                .getResponseBody()
+                .doOnNext(c -> log.info("{}", c))
+                .as(StepVerifier::create)
+                .assertNext(c -> Assertions.assertEquals("Sam", c.name()))
+                .assertNext(c -> Assertions.assertEquals("Mike", c.name()))
+                .verifyComplete();
+    }
+
+    // Cada perfil de cliente HTTP publica las métricas de su pool de conexiones (tag name=<perfil>).
+    @Test
+    public void customerClientPoolMetrics() {
+        // given
+        mockCustomerInformation("customer-service/customer-information-200.json", 200);
+        getCustomerInformation(HttpStatus.OK);
+
+        // then
+        this.client.get()
+                .uri("/actuator/metrics/reactor.netty.connection.provider.idle.connections?tag=name:customer")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.measurements[0].value").isEqualTo(1.0);
+    }
+
     private void mockCustomerInformation(String path, int responseCode) {
         // Este responseBody puede ser muy grande, afectando a la legibilidad del test.
         // Para evitar esto, se crea el directorio /test/resources/customer-service, y dentro el
@@ -0,0 +1,120 @@
+package com.jmunoz.aggregator;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
+import com.jmunoz.aggregator.dto.CustomerInformation;
+import com.jmunoz.aggregator.dto.Holding;
+import com.jmunoz.aggregator.dto.TradeRequest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.MediaType;
+import org.mockserver.verify.VerificationTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+
+// El hub de cada cliente sigue vivo un rato después de irse la última sesión, así que cada test empieza con un contexto nuevo.
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@TestPropertySource(properties = "customer.stream.heartbeat-period=200ms")
+public class CustomerStreamTest extends AbstractIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerStreamTest.class);
+    private static final ParameterizedTypeReference<ServerSentEvent<CustomerInformation>> EVENT_TYPE = new ParameterizedTypeReference<>() {
+    };
+
+    // La información inicial y, tras un trade, la nueva a partir de su respuesta: customer-service se consulta una vez.
+    // Entre medias llegan heartbeats (comentarios SSE sin datos).
+    @Test
+    public void customerStream() {
+        // given
+        mockCustomerInformation("customer-service/customer-information-200.json", 200);
+        mockCustomerTrade();
+
+        // then
+        this.client.get()
+                .uri("/customers/1/stream")
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(EVENT_TYPE)
+                .getResponseBody()
+                .doOnNext(event -> log.info("{}", event))
+                .as(StepVerifier::create)
+                .assertNext(e -> Assertions.assertEquals(10000, e.data().balance()))
+                .assertNext(e -> {
+                    Assertions.assertNull(e.data());
+                    Assertions.assertEquals("heartbeat", e.comment());
+                })
+                .then(this::trade)
+                .thenConsumeWhile(e -> Objects.isNull(e.data()))
+                .assertNext(e -> {
+                    Assertions.assertEquals(9780, e.data().balance());
+                    Assertions.assertEquals(List.of(new Holding(Ticker.GOOGLE, 4)), e.data().holdings());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        mockServerClient.verify(HttpRequest.request("/customers/1").withMethod("GET"), VerificationTimes.exactly(1));
+    }
+
+    @Test
+    public void customerNotFound() {
+        // given
+        mockCustomerInformation("customer-service/customer-information-404.json", 404);
+
+        // then
+        // Sin Accept, como curl: así el error puede ir como problem+json.
+        this.client.get()
+                .uri("/customers/1/stream")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("Customer [id=1] is not found");
+    }
+
+    private void trade() {
+        this.client.post()
+                .uri("/customers/1/trade")
+                .bodyValue(new TradeRequest(Ticker.GOOGLE, TradeAction.BUY, 2))
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    private void mockCustomerInformation(String path, int responseCode) {
+        var responseBody = this.resourceToString(path);
+        mockServerClient
+                .when(HttpRequest.request("/customers/1").withMethod("GET"))
+                .respond(
+                        HttpResponse.response(responseBody)
+                                .withStatusCode(responseCode)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+    }
+
+    private void mockCustomerTrade() {
+        mockServerClient
+                .when(HttpRequest.request("/stock/GOOGLE"))
+                .respond(
+                        HttpResponse.response(this.resourceToString("stock-service/stock-price-200.json"))
+                                .withStatusCode(200)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+        mockServerClient
+                .when(HttpRequest.request("/customers/1/trade").withMethod("POST"))
+                .respond(
+                        HttpResponse.response(this.resourceToString("customer-service/customer-trade-200.json"))
+                                .withStatusCode(200)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+    }
+}
@@ -3,15 +3,20 @@ package com.jmunoz.aggregator;
 import com.jmunoz.aggregator.domain.Ticker;
 import com.jmunoz.aggregator.domain.TradeAction;
 import com.jmunoz.aggregator.dto.TradeRequest;
+import com.jmunoz.aggregator.dto.TradeResult;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockserver.model.HttpRequest;
 import org.mockserver.model.HttpResponse;
 import org.mockserver.model.MediaType;
 import org.mockserver.model.RegexBody;
+import org.mockserver.verify.VerificationTimes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
 
 import java.util.Objects;
 
@@ -31,6 +36,26 @@ public class CustomerTradeTest extends AbstractIntegrationTest {
                 .jsonPath("$.totalPrice").isEqualTo(220);
     }
 
+    // Cada etapa del trade tiene su Timer, con sus percentiles.
+    @Test
+    public void tradeStageTimers() {
+        // given
+        mockCustomerTrade("customer-service/customer-trade-200.json", 200);
+
+        // then
+        var tradeRequest = new TradeRequest(Ticker.GOOGLE, TradeAction.BUY, 2);
+        postTrade(tradeRequest, HttpStatus.OK);
+
+        this.client.get()
+                .uri("/actuator/metrics/aggregator.trade.stage?tag=stage:customer-trade&tag=ticker:GOOGLE&tag=action:BUY&tag=outcome:success")
+                .exchange()
+                .expectStatus().isOk();
+        this.client.get()
+                .uri("/actuator/metrics/aggregator.trade.stage.percentile?tag=stage:price&tag=ticker:GOOGLE&tag=action:BUY&tag=outcome:success&tag=phi:0.999")
+                .exchange()
+                .expectStatus().isOk();
+    }
+
     @Test
     public void tradeFailure() {
         // given
@@ -57,6 +82,42 @@ public class CustomerTradeTest extends AbstractIntegrationTest {
                 .jsonPath("$.detail").isEqualTo("Quantity should be > 0");
     }
 
+    // Los errores de cada trade van en su resultado, y el precio de GOOGLE se pide una sola vez.
+    @Test
+    public void tradeBatch() {
+        // given
+        mockCustomerTrade("customer-service/customer-trade-200.json", 200);
+
+        // then
+        var requests = Flux.just(
+                new TradeRequest(Ticker.GOOGLE, TradeAction.BUY, 2),
+                new TradeRequest(Ticker.GOOGLE, TradeAction.BUY, -2),
+                new TradeRequest(Ticker.GOOGLE, TradeAction.BUY, 2)
+        );
+        this.client.post()
+                .uri("/customers/1/trades")
+                .contentType(org.springframework.http.MediaType.APPLICATION_NDJSON)
+                .accept(org.springframework.http.MediaType.APPLICATION_NDJSON)
+                .body(requests, TradeRequest.class)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(TradeResult.class)
+                .getResponseBody()
+                .doOnNext(result -> log.info("{}", result))
+                .as(StepVerifier::create)
+                .assertNext(r -> Assertions.assertEquals(9780, r.response().balance()))
+                .assertNext(r -> {
+                    Assertions.assertEquals(1, r.index());
+                    Assertions.assertEquals(400, r.error().getStatus());
+                    Assertions.assertEquals("Quantity should be > 0", r.error().getDetail());
+                })
+                .assertNext(r -> Assertions.assertEquals(2, r.index()))
+                .expectComplete()
+                .verify();
+
+        mockServerClient.verify(HttpRequest.request("/stock/GOOGLE"), VerificationTimes.exactly(1));
+    }
+
     private void mockCustomerTrade(String path, int responseCode) {
         // mock stock-service price response.
         var stockResponseBody = this.resourceToString("stock-service/stock-price-200.json");
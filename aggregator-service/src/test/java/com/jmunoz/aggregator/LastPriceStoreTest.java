@@ -0,0 +1,68 @@
+package com.jmunoz.aggregator;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import com.jmunoz.aggregator.dto.TradeRequest;
+import com.jmunoz.aggregator.service.LastPriceStore;
+import org.junit.jupiter.api.Test;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.MediaType;
+import org.mockserver.verify.VerificationTimes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+@TestPropertySource(properties = "stock.price-store.hold-after-trade=1s")
+public class LastPriceStoreTest extends AbstractPriceStreamTest {
+
+    @Autowired
+    private LastPriceStore lastPriceStore;
+
+    // Nadie mira el stream de precios, pero el trade conecta el hub y el store recibe los precios.
+    @Test
+    public void tradeFeedsLastPriceStore() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+        mockCustomerTrade();
+
+        // then
+        this.client.post()
+                .uri("/customers/1/trade")
+                .bodyValue(new TradeRequest(Ticker.GOOGLE, TradeAction.BUY, 2))
+                .exchange()
+                .expectStatus().isOk();
+
+        Flux.interval(Duration.ofMillis(10))
+                .map(i -> this.lastPriceStore.latest(Ticker.GOOGLE).map(PriceUpdate::price).orElse(0))
+                .filter(price -> price == 55)
+                .next()
+                .as(StepVerifier::create)
+                .expectNext(55)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        mockServerClient.verify(HttpRequest.request("/stock/price-stream"), VerificationTimes.atLeast(1));
+    }
+
+    private void mockCustomerTrade() {
+        mockServerClient
+                .when(HttpRequest.request("/stock/GOOGLE"))
+                .respond(
+                        HttpResponse.response(this.resourceToString("stock-service/stock-price-200.json"))
+                                .withStatusCode(200)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+        mockServerClient
+                .when(HttpRequest.request("/customers/1/trade").withMethod("POST"))
+                .respond(
+                        HttpResponse.response(this.resourceToString("customer-service/customer-trade-200.json"))
+                                .withStatusCode(200)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+    }
+}
@@ -0,0 +1,327 @@
+package com.jmunoz.aggregator;
+
+import com.jmunoz.aggregator.client.StockServiceClient;
+import com.jmunoz.aggregator.domain.OrderState;
+import com.jmunoz.aggregator.domain.OrderType;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
+import com.jmunoz.aggregator.domain.UpstreamState;
+import com.jmunoz.aggregator.dto.Order;
+import com.jmunoz.aggregator.dto.OrderRequest;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import com.jmunoz.aggregator.service.LastPriceStore;
+import com.jmunoz.aggregator.service.OrderService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.MediaType;
+import org.mockserver.model.RegexBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Los precios de GOOGLE del stream son 53, 54 y 55.
+// Las órdenes vuelven a subscribirse al hub 2s después de que termine el stream (ver priceInGapTriggers).
+// El hub se desconecta en cuanto las órdenes se desubscriben (ver stalePriceIgnored).
+@TestPropertySource(properties = {
+        "stock.price-store.max-staleness=100ms",
+        "customer.orders.resubscribe-delay=2s",
+        "stock.price-stream.idle-grace-period=0s"
+})
+public class OrderTest extends AbstractPriceStreamTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderTest.class);
+
+    // Nos subscribimos directamente al service: el stream SSE no responde hasta que hay alguna orden.
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private StockServiceClient stockServiceClient;
+
+    @Autowired
+    private LastPriceStore lastPriceStore;
+
+    // Compra límite a 54: la dispara el primer precio (53) y se ejecuta a ese precio.
+    // Una vez terminada, GET la sigue devolviendo con su estado final.
+    @Test
+    public void limitOrderFilled() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+        mockCustomerTrade(53, "customer-service/customer-trade-200.json", 200);
+        var orderId = new AtomicLong();
+
+        // then
+        this.orderService.orderUpdates(1)
+                .doOnNext(order -> log.info("{}", order))
+                .as(StepVerifier::create)
+                .then(() -> postOrder(new OrderRequest(Ticker.GOOGLE, TradeAction.BUY, 2, OrderType.LIMIT, 54), HttpStatus.OK))
+                .assertNext(o -> Assertions.assertEquals(OrderState.OPEN, o.state()))
+                .assertNext(o -> Assertions.assertEquals(OrderState.TRIGGERED, o.state()))
+                .assertNext(o -> {
+                    Assertions.assertEquals(OrderState.FILLED, o.state());
+                    Assertions.assertEquals(9780, o.trade().balance());
+                    orderId.set(o.id());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        this.client.get()
+                .uri("/customers/1/orders/" + orderId.get())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.state").isEqualTo("FILLED")
+                .jsonPath("$.trade.balance").isEqualTo(9780);
+    }
+
+    // Compra stop a 55: no la disparan ni 53 ni 54, sino 55. customer-service rechaza el trade.
+    @Test
+    public void stopOrderRejected() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+        mockCustomerTrade(55, "customer-service/customer-trade-400.json", 400);
+
+        // then
+        this.orderService.orderUpdates(1)
+                .doOnNext(order -> log.info("{}", order))
+                .as(StepVerifier::create)
+                .then(() -> postOrder(new OrderRequest(Ticker.GOOGLE, TradeAction.BUY, 2, OrderType.STOP, 55), HttpStatus.OK))
+                .assertNext(o -> Assertions.assertEquals(OrderState.OPEN, o.state()))
+                .assertNext(o -> Assertions.assertEquals(OrderState.TRIGGERED, o.state()))
+                .assertNext(o -> {
+                    Assertions.assertEquals(OrderState.REJECTED, o.state());
+                    Assertions.assertEquals(400, o.error().getStatus());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    // Compra límite a 10: ningún precio la dispara, sigue OPEN hasta que se cancela.
+    @Test
+    public void cancelOrder() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+        var order = postOrder(new OrderRequest(Ticker.GOOGLE, TradeAction.BUY, 2, OrderType.LIMIT, 10), HttpStatus.OK)
+                .expectBody(Order.class)
+                .returnResult()
+                .getResponseBody();
+        Assertions.assertNotNull(order);
+        var uri = "/customers/1/orders/" + order.id();
+
+        // then
+        this.client.get()
+                .uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.state").isEqualTo("OPEN");
+
+        this.client.get()
+                .uri("/customers/1/orders/stream")
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(Order.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .assertNext(o -> Assertions.assertEquals(order.id(), o.id()))
+                .thenCancel()
+                .verify();
+
+        // Las órdenes de otro cliente no se ven.
+        this.client.delete()
+                .uri("/customers/2/orders/" + order.id())
+                .exchange()
+                .expectStatus().isNotFound();
+
+        this.client.delete()
+                .uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.state").isEqualTo("CANCELLED");
+
+        this.client.get()
+                .uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.state").isEqualTo("CANCELLED");
+
+        // Ya no está OPEN: cancelarla otra vez la devuelve tal cual.
+        this.client.delete()
+                .uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.state").isEqualTo("CANCELLED");
+
+        this.client.get()
+                .uri("/customers/1/orders/" + (order.id() + 1000))
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.title").isEqualTo("Order Not Found");
+    }
+
+    // El hub repite el último precio (55) al subscribirse, pero ya es antiguo: no dispara la compra límite a 56.
+    // El precio repetido llega dentro de la subscripción de las órdenes, antes de responder al POST, así que al
+    // consultar la orden ya sabemos si la ha disparado.
+    // Al terminar cancelamos la orden: cerrar el contexto no para la subscripción de las órdenes al hub, que seguiría
+    // reintentando conectar con stock-service (y llamando a MockServer) durante los tests siguientes.
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    public void stalePriceIgnored() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+        this.client.get()
+                .uri("/stock/price-stream")
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(PriceUpdate.class)
+                .getResponseBody()
+                .map(PriceUpdate::price)
+                .as(StepVerifier::create)
+                .expectNext(53, 54, 55)
+                .expectComplete()
+                .verify();
+        mockServerClient.clear(HttpRequest.request("/stock/price-stream"));
+        mockServerClient
+                .when(HttpRequest.request("/stock/price-stream"))
+                .respond(HttpResponse.response().withStatusCode(503));
+        awaitStale(this.lastPriceStore.latest(Ticker.GOOGLE).orElseThrow());
+
+        // then
+        var order = postOrder(new OrderRequest(Ticker.GOOGLE, TradeAction.BUY, 2, OrderType.LIMIT, 56), HttpStatus.OK)
+                .expectBody(Order.class)
+                .returnResult()
+                .getResponseBody();
+        Assertions.assertNotNull(order);
+
+        this.client.get()
+                .uri("/customers/1/orders/" + order.id())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.state").isEqualTo("OPEN");
+
+        // Sin órdenes esperando, las órdenes se desubscriben del hub y este se desconecta y deja de reintentar.
+        this.client.delete()
+                .uri("/customers/1/orders/" + order.id())
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    // Compra límite a 56. El primer stream (60, 61) termina y, mientras las órdenes esperan para volver a
+    // subscribirse, otro subscriber reconecta el hub y llegan 55 (cruza) y 62 (vuelve atrás).
+    // Al volver, las órdenes reanudan desde el último precio que vieron y el 55 dispara la compra a ese precio.
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    public void priceInGapTriggers() {
+        // given
+        mockPriceStreamOnce("/stock/price-stream", "stock-service/stock-price-stream-high-200.jsonl", 0);
+        mockPriceStreamOnce("/stock/price-stream", "stock-service/stock-price-stream-spike-200.jsonl", 0);
+        mockCustomerTrade(55, "customer-service/customer-trade-200.json", 200);
+
+        // then
+        this.orderService.orderUpdates(1)
+                .doOnNext(order -> log.info("{}", order))
+                .as(StepVerifier::create)
+                .then(() -> postOrder(new OrderRequest(Ticker.GOOGLE, TradeAction.BUY, 2, OrderType.LIMIT, 56), HttpStatus.OK))
+                .assertNext(o -> Assertions.assertEquals(OrderState.OPEN, o.state()))
+                .then(this::awaitStreamCompleted)
+                .then(() -> this.client.get()
+                        .uri("/stock/price-stream?tickers=GOOGLE")
+                        .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                        .exchange()
+                        .expectStatus().is2xxSuccessful()
+                        .returnResult(PriceUpdate.class)
+                        .getResponseBody()
+                        .map(PriceUpdate::price)
+                        .as(StepVerifier::create)
+                        .expectNext(61, 55, 62)
+                        .expectComplete()
+                        .verify())
+                .assertNext(o -> Assertions.assertEquals(OrderState.TRIGGERED, o.state()))
+                .assertNext(o -> Assertions.assertEquals(OrderState.FILLED, o.state()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(10));
+    }
+
+    @Test
+    public void inputValidation() {
+        var invalidQuantity = new OrderRequest(Ticker.GOOGLE, TradeAction.BUY, 0, OrderType.LIMIT, 54);
+        postOrder(invalidQuantity, HttpStatus.BAD_REQUEST)
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("Quantity should be > 0");
+
+        var missingType = new OrderRequest(Ticker.GOOGLE, TradeAction.BUY, 2, null, 54);
+        postOrder(missingType, HttpStatus.BAD_REQUEST)
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("Order Type is required");
+
+        var invalidPrice = new OrderRequest(Ticker.GOOGLE, TradeAction.BUY, 2, OrderType.STOP, 0);
+        postOrder(invalidPrice, HttpStatus.BAD_REQUEST)
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("Price should be > 0");
+    }
+
+    private WebTestClient.ResponseSpec postOrder(OrderRequest request, HttpStatus expectedStatus) {
+        return this.client.post()
+                .uri("/customers/1/orders")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isEqualTo(expectedStatus);
+    }
+
+    // El precio ya es más antiguo que stock.price-store.max-staleness.
+    private void awaitStale(PriceUpdate priceUpdate) {
+        Flux.interval(Duration.ofMillis(10))
+                .filter(i -> !this.lastPriceStore.fresh(priceUpdate))
+                .next()
+                .as(StepVerifier::create)
+                .expectNextCount(1)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    // El hub ha recibido el último precio del primer stream y stock-service lo ha terminado.
+    private void awaitStreamCompleted() {
+        Flux.interval(Duration.ofMillis(10))
+                .filter(i -> this.lastPriceStore.latest(Ticker.GOOGLE).map(PriceUpdate::price).orElse(0) == 61
+                        && this.stockServiceClient.priceStreamStatus().state() == UpstreamState.IDLE)
+                .next()
+                .as(StepVerifier::create)
+                .expectNextCount(1)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    // El trade tiene que llevar el precio que ha disparado la orden.
+    private void mockCustomerTrade(int price, String path, int responseCode) {
+        var responseBody = this.resourceToString(path);
+        mockServerClient
+                .when(
+                        HttpRequest.request("/customers/1/trade")
+                                .withMethod("POST")
+                                .withBody(RegexBody.regex(".*\"price\":%d.*".formatted(price)))
+                )
+                .respond(
+                        HttpResponse.response(responseBody)
+                                .withStatusCode(responseCode)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+    }
+}
@@ -0,0 +1,116 @@
+package com.jmunoz.aggregator;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
+import com.jmunoz.aggregator.dto.PortfolioValue;
+import com.jmunoz.aggregator.dto.TradeRequest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.MediaType;
+import org.mockserver.verify.VerificationTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Objects;
+
+public class PortfolioValueTest extends AbstractIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PortfolioValueTest.class);
+
+    @Test
+    public void portfolioValue() {
+        // given
+        // El customer tiene 2 acciones de GOOGLE y stock-service dice que valen 110.
+        mock("/customers/1", "customer-service/customer-information-200.json", 200);
+        mock("/stock/GOOGLE", "stock-service/stock-price-200.json", 200);
+
+        // then
+        getPortfolioValue(HttpStatus.OK)
+                .jsonPath("$.balance").isEqualTo(10000)
+                .jsonPath("$.holdingsValue").isEqualTo(220)
+                .jsonPath("$.totalValue").isEqualTo(10220)
+                .jsonPath("$.holdings.[0].ticker").isEqualTo("GOOGLE")
+                .jsonPath("$.holdings.[0].price").isEqualTo(110);
+    }
+
+    @Test
+    public void customerNotFound() {
+        // given
+        mock("/customers/1", "customer-service/customer-information-404.json", 404);
+
+        // then
+        getPortfolioValue(HttpStatus.NOT_FOUND)
+                .jsonPath("$.detail").isEqualTo("Customer [id=1] is not found");
+    }
+
+    // La valoración inicial y, tras un trade, la nueva a partir de su respuesta: customer-service se consulta una vez.
+    // El hub se queda reintentando conectar con stock-service, así que cerramos el contexto al terminar.
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    public void portfolioValueStream() {
+        // given
+        mock("/customers/1", "customer-service/customer-information-200.json", 200);
+        mock("/stock/GOOGLE", "stock-service/stock-price-200.json", 200);
+        mock("/customers/1/trade", "customer-service/customer-trade-200.json", 200);
+        mockServerClient
+                .when(HttpRequest.request("/stock/price-stream"))
+                .respond(HttpResponse.response().withStatusCode(503));
+
+        // then
+        this.client.get()
+                .uri("/customers/1/portfolio-value/stream")
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(PortfolioValue.class)
+                .getResponseBody()
+                .doOnNext(value -> log.info("{}", value))
+                .as(StepVerifier::create)
+                .assertNext(v -> Assertions.assertEquals(10220, v.totalValue()))
+                .then(this::trade)
+                .thenConsumeWhile(v -> v.balance() == 10000)
+                .assertNext(v -> {
+                    Assertions.assertEquals(9780, v.balance());
+                    Assertions.assertEquals(440, v.holdingsValue());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        mockServerClient.verify(HttpRequest.request("/customers/1").withMethod("GET"), VerificationTimes.exactly(1));
+    }
+
+    private void trade() {
+        this.client.post()
+                .uri("/customers/1/trade")
+                .bodyValue(new TradeRequest(Ticker.GOOGLE, TradeAction.BUY, 2))
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    private void mock(String path, String responseBodyPath, int responseCode) {
+        var responseBody = this.resourceToString(responseBodyPath);
+        mockServerClient
+                .when(HttpRequest.request(path))
+                .respond(
+                        HttpResponse.response(responseBody)
+                                .withStatusCode(responseCode)
+                                .withContentType(MediaType.APPLICATION_JSON)
+                );
+    }
+
+    private WebTestClient.BodyContentSpec getPortfolioValue(HttpStatus expectedStatus) {
+        return this.client.get()
+                .uri("/customers/1/portfolio-value")
+                .exchange()
+                .expectStatus().isEqualTo(expectedStatus)
+                .expectBody()
+                .consumeWith(e -> log.info("{}", new String(Objects.requireNonNull(e.getResponseBody()))));
+    }
+}
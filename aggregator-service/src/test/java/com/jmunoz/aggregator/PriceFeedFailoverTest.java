@@ -0,0 +1,133 @@
+package com.jmunoz.aggregator;
+
+import com.jmunoz.aggregator.client.StockServiceClient;
+import com.jmunoz.aggregator.domain.UpstreamState;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+// Dos fuentes del stream de precios (primary y standby) en el mismo MockServer, con distinto path.
+// Con varias fuentes, una que termina el stream vuelve a conectar, así que el stream unido no termina.
+@TestPropertySource(properties = {
+        "stock.price-stream.sources=http://localhost:${mockServerPort}/primary,http://localhost:${mockServerPort}/standby",
+        "stock.price-stream.reconnect.min-backoff=10ms",
+        "stock.price-stream.reconnect.max-backoff=50ms"
+})
+public class PriceFeedFailoverTest extends AbstractPriceStreamTest {
+
+    private static final String PRIMARY = "http://localhost:%d/primary";
+    private static final String STANDBY = "http://localhost:%d/standby";
+
+    @Autowired
+    private StockServiceClient stockServiceClient;
+
+    // Las dos fuentes envían los mismos precios: cada uno sale una sola vez.
+    // Solo los envían una vez: al reconectar ya no responden.
+    @Test
+    public void duplicatesAreDropped() {
+        // given
+        mockPriceStreamOnce("/primary/stock/price-stream", "stock-service/stock-price-stream-200.jsonl", 0);
+        mockPriceStreamOnce("/standby/stock/price-stream", "stock-service/stock-price-stream-200.jsonl", 0);
+
+        // then
+        StepVerifier.create(this.stockServiceClient.priceUpdateStream().map(PriceUpdate::price))
+                .expectNext(53, 54, 55)
+                // Esperamos a que lleguen también las copias.
+                .thenAwait(Duration.ofMillis(300))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        this.client.get()
+                .uri("/actuator/metrics/stock.price-stream.source.ticks?tag=result:won")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.measurements[0].value").isEqualTo(3.0);
+
+        this.client.get()
+                .uri("/actuator/metrics/stock.price-stream.source.ticks?tag=result:duplicate")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.measurements[0].value").isEqualTo(3.0);
+    }
+
+    // El primary está caído: los precios llegan por el standby.
+    @Test
+    public void failover() {
+        // given
+        mockServerClient
+                .when(HttpRequest.request("/primary/stock/price-stream"))
+                .respond(HttpResponse.response().withStatusCode(503));
+        mockPriceStream("/standby/stock/price-stream", "stock-service/stock-price-stream-200.jsonl");
+
+        // then
+        StepVerifier.create(this.stockServiceClient.priceUpdateStream().map(PriceUpdate::price))
+                .expectNext(53, 54, 55)
+                .then(() -> {
+                    var primary = PRIMARY.formatted(mockServerClient.getPort());
+                    var standby = STANDBY.formatted(mockServerClient.getPort());
+                    var sources = this.stockServiceClient.priceStreamSources();
+                    Assertions.assertEquals(List.of(primary, standby), List.copyOf(sources.keySet()));
+                    Assertions.assertNotEquals(UpstreamState.CONNECTED, sources.get(primary).state());
+                })
+                // El primary sigue reintentando, así que el stream no termina.
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        this.client.get()
+                .uri("/actuator/metrics/stock.price-stream.source.ticks?tag=result:won&tag=source:" + STANDBY.formatted(mockServerClient.getPort()))
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.measurements[0].value").isEqualTo(3.0);
+    }
+
+    // El standby envía un precio anterior a los que ya ha dado el primary (y que nunca hemos dado): se descarta.
+    @Test
+    public void staleAreDropped() {
+        // given
+        mockPriceStreamOnce("/primary/stock/price-stream", "stock-service/stock-price-stream-200.jsonl", 0);
+        mockPriceStreamOnce("/standby/stock/price-stream", "stock-service/stock-price-stream-old-200.jsonl", 300);
+
+        // then
+        StepVerifier.create(this.stockServiceClient.priceUpdateStream().map(PriceUpdate::price))
+                .expectNext(53, 54, 55)
+                .expectNoEvent(Duration.ofMillis(500))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        this.client.get()
+                .uri("/actuator/metrics/stock.price-stream.source.ticks?tag=result:stale&tag=source:" + STANDBY.formatted(mockServerClient.getPort()))
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.measurements[0].value").isEqualTo(1.0);
+    }
+
+    // El primary termina el stream sin error y el standby está caído: el primary vuelve a conectar y da más precios.
+    @Test
+    public void completedSourceReconnects() {
+        // given
+        mockPriceStreamOnce("/primary/stock/price-stream", "stock-service/stock-price-stream-200.jsonl", 0);
+        mockPriceStreamOnce("/primary/stock/price-stream", "stock-service/stock-price-stream-later-200.jsonl", 0);
+        mockServerClient
+                .when(HttpRequest.request("/standby/stock/price-stream"))
+                .respond(HttpResponse.response().withStatusCode(503));
+
+        // then
+        StepVerifier.create(this.stockServiceClient.priceUpdateStream().map(PriceUpdate::price))
+                .expectNext(53, 54, 55, 56)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+}
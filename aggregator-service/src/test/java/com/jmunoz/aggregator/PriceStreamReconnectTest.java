@@ -0,0 +1,111 @@
+package com.jmunoz.aggregator;
+
+import com.jmunoz.aggregator.domain.DeliveryPolicy;
+import com.jmunoz.aggregator.domain.UpstreamState;
+import com.jmunoz.aggregator.dto.UpstreamStatus;
+import com.jmunoz.aggregator.service.StockPriceStreamService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.model.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+// stock-service falla y después se recupera: el estado pasa por RECONNECTING y DEGRADED hasta volver a CONNECTED.
+@DirtiesContext
+@TestPropertySource(properties = {
+        "stock.price-stream.reconnect.min-backoff=10ms",
+        "stock.price-stream.reconnect.max-backoff=50ms",
+        "stock.price-stream.reconnect.degraded-after=300ms"
+})
+public class PriceStreamReconnectTest extends AbstractIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PriceStreamReconnectTest.class);
+
+    @Autowired
+    private StockPriceStreamService stockPriceStreamService;
+
+    @Test
+    public void reconnectWithBackoff() {
+        // given
+        // stock-service no está disponible.
+        mockServerClient
+                .when(HttpRequest.request("/stock/price-stream"))
+                .respond(HttpResponse.response().withStatusCode(503));
+
+        var statuses = this.client.get()
+                .uri("/stock/price-stream/status")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(UpstreamStatus.class)
+                .getResponseBody()
+                .doOnNext(status -> log.info("{}", status));
+
+        // then
+        StepVerifier.create(statuses)
+                .assertNext(s -> Assertions.assertEquals(UpstreamState.IDLE, s.state()))
+                // Un subscriber del hub hace que se conecte con stock-service. La respuesta SSE no empieza hasta
+                // el primer precio, así que nos subscribimos directamente al servicio.
+                .then(() -> this.stockPriceStreamService.priceUpdateStream(null, DeliveryPolicy.CONFLATE).subscribe())
+                .assertNext(s -> Assertions.assertEquals(UpstreamState.RECONNECTING, s.state()))
+                .thenConsumeWhile(s -> s.state() == UpstreamState.RECONNECTING)
+                .consumeNextWith(s -> Assertions.assertEquals(UpstreamState.DEGRADED, s.state()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        this.client.get()
+                .uri("/actuator/health")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .consumeWith(e -> log.info("{}", new String(e.getResponseBody())))
+                .jsonPath("$.status").isEqualTo("DEGRADED")
+                .jsonPath("$.components.priceStream.details.state").isEqualTo("DEGRADED");
+
+        // stock-service se recupera.
+        // Nos subscribimos a los estados antes: el stream de stock-service termina enseguida y la conexión vuelve a IDLE.
+        this.client.get()
+                .uri("/stock/price-stream/status")
+                .exchange()
+                .returnResult(UpstreamStatus.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .assertNext(s -> Assertions.assertEquals(UpstreamState.DEGRADED, s.state()))
+                .then(this::stockServiceRecovers)
+                .thenConsumeWhile(s -> s.state() != UpstreamState.CONNECTED)
+                .assertNext(s -> Assertions.assertEquals(UpstreamState.CONNECTED, s.state()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        this.client.get()
+                .uri("/actuator/metrics/stock.price-stream.gap")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.measurements[?(@.statistic == 'COUNT')].value").isEqualTo(1.0);
+
+        this.client.get()
+                .uri("/actuator/metrics/stock.price-stream.reconnects")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .consumeWith(e -> log.info("{}", new String(e.getResponseBody())))
+                .jsonPath("$.measurements[0].value").value(v -> Assertions.assertTrue(((Number) v).doubleValue() >= 2));
+    }
+
+    private void stockServiceRecovers() {
+        mockServerClient.clear(HttpRequest.request("/stock/price-stream"));
+        mockServerClient
+                .when(HttpRequest.request("/stock/price-stream"))
+                .respond(HttpResponse.response(this.resourceToString("stock-service/stock-price-stream-200.jsonl"))
+                        .withStatusCode(200)
+                        .withContentType(MediaType.parse("application/x-ndjson")));
+    }
+}
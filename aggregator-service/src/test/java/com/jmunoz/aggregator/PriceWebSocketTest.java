@@ -0,0 +1,124 @@
+package com.jmunoz.aggregator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.PriceSocketMessage;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// El WebSocket necesita un servidor de verdad, así que aquí no vale el WebTestClient sin servidor del resto de tests.
+// Mismas propiedades que AbstractIntegrationTest, con un puerto aleatorio.
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "customer.service.url=http://localhost:${mockServerPort}",
+        "stock.service.url=http://localhost:${mockServerPort}",
+        "customer.information.cache.ttl=0s",
+        "customer.not-found.cache.ttl=0s",
+        "stock.price-stream.websocket.resubscribe-delay=10s"
+})
+public class PriceWebSocketTest extends AbstractPriceStreamTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PriceWebSocketTest.class);
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Subscritos solo a GOOGLE: de los precios de GOOGLE y APPLE solo llegan los de GOOGLE.
+    // Después cambiamos de tickers sin reconectar.
+    @Test
+    public void subscribeUnsubscribeSnapshot() throws Exception {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-tickers-200.jsonl");
+
+        // then
+        try (var socket = this.connect()) {
+            socket.send("{\"type\":\"SUBSCRIBE\",\"tickers\":[\"GOOGLE\"]}");
+            Assertions.assertEquals(Set.of(Ticker.GOOGLE), socket.next(PriceSocketMessage.Type.SUBSCRIPTIONS).tickers());
+            Assertions.assertEquals(53, socket.next(PriceSocketMessage.Type.PRICE).price().price());
+            Assertions.assertEquals(54, socket.next(PriceSocketMessage.Type.PRICE).price().price());
+
+            // Sin tickers, el último precio de los subscritos.
+            socket.send("{\"type\":\"SNAPSHOT\"}");
+            var snapshot = socket.next(PriceSocketMessage.Type.SNAPSHOT).prices();
+            Assertions.assertEquals(List.of(54), snapshot.stream().map(PriceUpdate::price).toList());
+
+            socket.send("{\"type\":\"SUBSCRIBE\",\"tickers\":[\"APPLE\"]}");
+            Assertions.assertEquals(Set.of(Ticker.GOOGLE, Ticker.APPLE), socket.next(PriceSocketMessage.Type.SUBSCRIPTIONS).tickers());
+            socket.send("{\"type\":\"UNSUBSCRIBE\"}");
+            Assertions.assertEquals(Set.of(), socket.next(PriceSocketMessage.Type.SUBSCRIPTIONS).tickers());
+
+            // Los mensajes que no se entienden responden con un error, sin cerrar la sesión.
+            socket.send("{\"type\":\"SUBSCRIBE\",\"tickers\":[\"NETFLIX\"]}");
+            Assertions.assertNotNull(socket.next(PriceSocketMessage.Type.ERROR).error());
+            socket.send("{\"type\":\"SNAPSHOT\"}");
+            Assertions.assertEquals(List.of(), socket.next(PriceSocketMessage.Type.SNAPSHOT).prices());
+        }
+    }
+
+
+    private Socket connect() {
+        var socket = new Socket();
+        var uri = URI.create("ws://localhost:" + this.port + "/stock/price-stream/ws");
+        socket.connection = new ReactorNettyWebSocketClient()
+                .execute(uri, session -> session.send(socket.outbound.asFlux().map(session::textMessage))
+                        .and(session.receive()
+                                .map(WebSocketMessage::getPayloadAsText)
+                                .doOnNext(text -> log.info("{}", text))
+                                .doOnNext(socket.inbound::add)))
+                .subscribe();
+        return socket;
+    }
+
+    // Cliente de prueba: envía los mensajes que le pasamos y guarda los que recibe.
+    private class Socket implements AutoCloseable {
+
+        private final Sinks.Many<String> outbound = Sinks.many().unicast().onBackpressureBuffer();
+        private final BlockingQueue<String> inbound = new LinkedBlockingQueue<>();
+        private Disposable connection;
+
+        void send(String text) {
+            this.outbound.tryEmitNext(text);
+        }
+
+        // Siguiente mensaje, que tiene que ser del tipo indicado.
+        // Si esperamos una respuesta, nos saltamos los precios que puedan llegar antes (los precios van por su cuenta).
+        PriceSocketMessage next(PriceSocketMessage.Type type) throws Exception {
+            while (true) {
+                var text = this.inbound.poll(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                Assertions.assertNotNull(text, "no message received");
+                var message = objectMapper.readValue(text, PriceSocketMessage.class);
+                if (type != PriceSocketMessage.Type.PRICE && message.type() == PriceSocketMessage.Type.PRICE) {
+                    continue;
+                }
+                Assertions.assertEquals(type, message.type());
+                return message;
+            }
+        }
+
+        @Override
+        public void close() {
+            this.connection.dispose();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.jmunoz.aggregator;
+
+import com.jmunoz.aggregator.domain.CandleInterval;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.Candle;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+
+public class StockCandleStreamTest extends AbstractPriceStreamTest {
+
+    private static final Logger log = LoggerFactory.getLogger(StockCandleStreamTest.class);
+
+    // Precios de GOOGLE en los segundos 1, 2 y 3: se cierran las velas de los segundos 1 y 2.
+    @Test
+    public void candleStream() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+
+        // then
+        getCandleStream("/stock/GOOGLE/candles/stream?interval=1s")
+                .assertNext(c -> Assertions.assertEquals(new Candle(Ticker.GOOGLE, CandleInterval.ONE_SECOND,
+                        LocalDateTime.parse("2026-01-01T12:00:01"), 53, 53, 53, 53, 1, true), c))
+                .assertNext(c -> Assertions.assertEquals(new Candle(Ticker.GOOGLE, CandleInterval.ONE_SECOND,
+                        LocalDateTime.parse("2026-01-01T12:00:02"), 54, 54, 54, 54, 1, true), c))
+                .expectComplete()
+                .verify();
+    }
+
+    // La vela de 1m de la primera conexión sigue en curso cuando termina el stream y nadie más mira velas.
+    // Un subscriber posterior no la recibe: le faltan los precios de mientras tanto. La vela de 1m que empieza
+    // con los precios de su conexión tampoco se cierra antes de que termine el stream.
+    @Test
+    public void candleStreamAfterIdle() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+        getCandleStream("/stock/GOOGLE/candles/stream?interval=1m")
+                .expectComplete()
+                .verify();
+
+        // then
+        getCandleStream("/stock/GOOGLE/candles/stream?interval=1m")
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    public void candleStreamInvalidInterval() {
+        this.client.get()
+                .uri("/stock/GOOGLE/candles/stream?interval=5m")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    private StepVerifier.FirstStep<Candle> getCandleStream(String uri) {
+        return this.client.get()
+                .uri(uri)
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(Candle.class)
+                .getResponseBody()
+                .doOnNext(candle -> log.info("{}", candle))
+                .as(StepVerifier::create);
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.jmunoz.aggregator;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.Indicators;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.context.TestPropertySource;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// Ventanas pequeñas para poder calcular a mano los valores con los precios de GOOGLE 53, 54 y 55 (segundos 1, 2 y 3).
+// Con idle-timeout corto el feed deja el hub poco después de cada snapshot y no sigue reconectando tras el test.
+@TestPropertySource(properties = {
+        "stock.indicators.sma-windows=2",
+        "stock.indicators.ema-periods=3",
+        "stock.indicators.time-windows=2s",
+        "stock.indicators.publish-period=100ms",
+        "stock.indicators.idle-timeout=100ms"
+})
+public class StockIndicatorsTest extends AbstractPriceStreamTest {
+
+    private static final Logger log = LoggerFactory.getLogger(StockIndicatorsTest.class);
+
+    // SMA(2) = (54 + 55) / 2. EMA(3) con alpha 0.5: 53 -> 53.5 -> 54.25.
+    // TWAP(2s) de los segundos 1 a 3: 53 durante 1s y 54 durante 1s.
+    // Cuando termina el stream de precios se envían los últimos indicadores y termina también este.
+    @Test
+    public void indicatorStream() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+
+        // then
+        this.client.get()
+                .uri("/stock/GOOGLE/indicators/stream")
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(Indicators.class)
+                .getResponseBody()
+                .doOnNext(indicators -> log.info("{}", indicators))
+                .last()
+                .as(StepVerifier::create)
+                .assertNext(i -> {
+                    Assertions.assertEquals(Ticker.GOOGLE, i.ticker());
+                    Assertions.assertEquals(LocalDateTime.parse("2026-01-01T12:00:03"), i.time());
+                    Assertions.assertEquals(55, i.price());
+                    Assertions.assertEquals(3, i.ticks());
+                    Assertions.assertEquals(Map.of("2", 54.5), i.sma());
+                    Assertions.assertEquals(Map.of("3", 54.25), i.ema());
+                    Assertions.assertEquals(Map.of("2s", 53.5), i.twap());
+                })
+                .expectComplete()
+                .verify();
+    }
+
+    // El precio sin time (53) no se cuenta.
+    @Test
+    public void priceWithoutTimeSkipped() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-no-time-200.jsonl");
+
+        // then
+        this.client.get()
+                .uri("/stock/GOOGLE/indicators/stream")
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(Indicators.class)
+                .getResponseBody()
+                .doOnNext(indicators -> log.info("{}", indicators))
+                .last()
+                .as(StepVerifier::create)
+                .assertNext(i -> {
+                    Assertions.assertEquals(54, i.price());
+                    Assertions.assertEquals(1, i.ticks());
+                })
+                .expectComplete()
+                .verify();
+    }
+
+    // Sin precios, el snapshot solo lleva el ticker.
+    @Test
+    public void indicatorsWithoutPrices() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-empty-200.jsonl");
+
+        // then
+        this.client.get()
+                .uri("/stock/APPLE/indicators")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.ticker").isEqualTo("APPLE")
+                .jsonPath("$.ticks").isEqualTo(0)
+                .jsonPath("$.sma").doesNotExist();
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.jmunoz.aggregator;
+
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockserver.model.HttpRequest;
+import org.mockserver.verify.VerificationTimes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+// Los precios salen de los ficheros grabados y no de stock-service.
+// El hub guarda el último precio de cada ticker, así que usamos un contexto propio.
+@DirtiesContext
+@TestPropertySource(properties = {
+        "stock.price-stream.replay.files=src/test/resources/stock-service/stock-price-stream-200.jsonl," +
+                "src/test/resources/stock-service/stock-price-stream-tickers-200.jsonl",
+        "stock.price-stream.replay.reader=MMAP",
+        "stock.price-stream.replay.speed=10"
+})
+public class StockPriceReplayTest extends AbstractIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(StockPriceReplayTest.class);
+
+    // Los precios de cada fichero están separados 1 segundo. A 10x salen cada 100 ms aproximadamente.
+    // Cada fichero empieza con su propio reloj: 200 ms del primero y 100 ms del segundo.
+    // Medimos desde la petición (la reproducción no empieza antes), porque el primer precio puede llegar tarde al
+    // cliente mientras arranca. Con DROP_OLDEST no se pierde ningún precio aunque el cliente vaya con retraso.
+    @Test
+    public void replay() {
+        // then
+        var startedAt = System.nanoTime();
+        this.client.get()
+                .uri("/stock/price-stream?policy=DROP_OLDEST")
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(PriceUpdate.class)
+                .getResponseBody()
+                .doOnNext(price -> log.info("{}", price))
+                .as(StepVerifier::create)
+                .assertNext(p -> Assertions.assertEquals(53, p.price()))
+                .assertNext(p -> Assertions.assertEquals(54, p.price()))
+                .assertNext(p -> Assertions.assertEquals(55, p.price()))
+                .assertNext(p -> Assertions.assertEquals(Ticker.GOOGLE, p.ticker()))
+                .assertNext(p -> Assertions.assertEquals(120, p.price()))
+                .expectNextCount(2)
+                .expectComplete()
+                .verify();
+        var replayed = Duration.ofNanos(System.nanoTime() - startedAt);
+        Assertions.assertTrue(replayed.compareTo(Duration.ofMillis(300)) >= 0, "replay took " + replayed);
+
+        // no se ha llamado a stock-service.
+        mockServerClient.verify(HttpRequest.request("/stock/price-stream"), VerificationTimes.never());
+    }
+}
@@ -1,16 +1,19 @@
 package com.jmunoz.aggregator;
 
+import com.jmunoz.aggregator.codec.PriceUpdateFrames;
+import com.jmunoz.aggregator.domain.Ticker;
 import com.jmunoz.aggregator.dto.PriceUpdate;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
-import org.mockserver.model.HttpRequest;
-import org.mockserver.model.HttpResponse;
-import org.mockserver.model.MediaType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.codec.ServerSentEvent;
 import reactor.test.StepVerifier;
 
-public class StockPriceStreamTest extends AbstractIntegrationTest {
+import java.time.LocalDateTime;
+
+public class StockPriceStreamTest extends AbstractPriceStreamTest {
 
     private static final Logger log = LoggerFactory.getLogger(StockPriceStreamTest.class);
 
@@ -18,15 +21,7 @@ public class StockPriceStreamTest extends AbstractIntegrationTest {
     public void priceStream() {
         // given
         // mock stock-service streaming response.
-        var responseBody = this.resourceToString("stock-service/stock-price-stream-200.jsonl");
-        mockServerClient
-                .when(HttpRequest.request("/stock/price-stream"))
-                .respond(
-                        HttpResponse.response(responseBody)
-                                .withStatusCode(200)
-                                // El media type indicado se ve en Swagger.
-                                .withContentType(MediaType.parse("application/x-ndjson"))
-                );
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
 
         // then
         // we should get the streaming response via aggregator-service.
@@ -50,4 +45,226 @@ public class StockPriceStreamTest extends AbstractIntegrationTest {
                 // Y lo que lanza to-do.
                 .verify();
     }
+
+    // Las métricas de los subscribers van por política, sin una serie por conexión.
+    @Test
+    public void priceStreamSubscriberMetrics() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+        getPriceStream("/stock/price-stream?policy=DROP_OLDEST")
+                .expectNextCount(3)
+                .expectComplete()
+                .verify();
+
+        // then
+        this.client.get()
+                .uri("/actuator/metrics/price.stream.subscriber.lag?tag=policy:DROP_OLDEST")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.measurements[?(@.statistic == 'COUNT')].value").isEqualTo(3.0)
+                .jsonPath("$.availableTags[?(@.tag == 'subscriber')]").doesNotExist();
+
+        this.client.get()
+                .uri("/actuator/metrics/price.stream.subscriber.detail.lag")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void priceStreamByTicker() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-tickers-200.jsonl");
+
+        // then
+        // solo debemos recibir los precios de APPLE.
+        this.client.get()
+                .uri("/stock/price-stream?tickers=APPLE")
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(PriceUpdate.class)
+                .getResponseBody()
+                .doOnNext(price -> log.info("{}", price))
+                .as(StepVerifier::create)
+                .assertNext(p -> Assertions.assertEquals(Ticker.APPLE, p.ticker()))
+                .assertNext(p -> Assertions.assertEquals(121, p.price()))
+                .expectComplete()
+                .verify();
+    }
+
+    // Los servicios JVM pueden pedir frames binarios en vez de SSE con JSON.
+    @Test
+    public void priceStreamFrames() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+
+        // then
+        this.client.get()
+                .uri("/stock/price-stream")
+                .accept(PriceUpdateFrames.MEDIA_TYPE)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().contentType(PriceUpdateFrames.MEDIA_TYPE)
+                .returnResult(PriceUpdate.class)
+                .getResponseBody()
+                .doOnNext(price -> log.info("{}", price))
+                .as(StepVerifier::create)
+                .assertNext(p -> Assertions.assertEquals(new PriceUpdate(Ticker.GOOGLE, 53, LocalDateTime.parse("2026-01-01T12:00:01")), p))
+                .assertNext(p -> Assertions.assertEquals(54, p.price()))
+                .assertNext(p -> Assertions.assertEquals(55, p.price()))
+                .expectComplete()
+                .verify();
+    }
+
+    // Con calidades en Accept se elige el tipo preferido, aunque no coincida exactamente con MEDIA_TYPE.
+    @Test
+    public void priceStreamFramesPreferred() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+
+        // then
+        this.client.get()
+                .uri("/stock/price-stream")
+                .header("Accept", PriceUpdateFrames.MEDIA_TYPE_VALUE + ";q=0.9, text/event-stream;q=0.5")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().contentType(PriceUpdateFrames.MEDIA_TYPE)
+                .returnResult(PriceUpdate.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNextCount(3)
+                .expectComplete()
+                .verify();
+    }
+
+    // Sin cabecera Accept se sigue respondiendo con SSE.
+    @Test
+    public void priceStreamWithoutAccept() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+
+        // then
+        this.client.get()
+                .uri("/stock/price-stream")
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectHeader().contentTypeCompatibleWith(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .returnResult(PriceUpdate.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNextCount(3)
+                .expectComplete()
+                .verify();
+    }
+
+    @Test
+    public void priceStreamReconnect() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+        getPriceStream("/stock/price-stream")
+                .expectNextCount(3)
+                .expectComplete()
+                .verify();
+
+        // then
+        // stock-service ha terminado el stream. El siguiente subscriber vuelve a conectar
+        // y primero recibe el último precio que ya teníamos.
+        getPriceStream("/stock/price-stream?tickers=GOOGLE")
+                .assertNext(p -> Assertions.assertEquals(55, p.price()))
+                .assertNext(p -> Assertions.assertEquals(53, p.price()))
+                .assertNext(p -> Assertions.assertEquals(54, p.price()))
+                .assertNext(p -> Assertions.assertEquals(55, p.price()))
+                .expectComplete()
+                .verify();
+    }
+
+    // Al reconectar con Last-Event-ID se reciben los precios perdidos y después los nuevos, sin repetir el último.
+    @Test
+    public void priceStreamResume() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-200.jsonl");
+        var events = this.client.get()
+                .uri("/stock/price-stream")
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<PriceUpdate>>() {
+                })
+                .getResponseBody()
+                .collectList()
+                .block();
+        Assertions.assertEquals(3, events.size());
+        Assertions.assertTrue(Long.parseLong(events.get(0).id()) < Long.parseLong(events.get(1).id()));
+        Assertions.assertTrue(Long.parseLong(events.get(1).id()) < Long.parseLong(events.get(2).id()));
+
+        // then
+        // el cliente solo recibió el primer precio. stock-service vuelve a enviar los tres al reconectar el hub.
+        this.client.get()
+                .uri("/stock/price-stream")
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", events.getFirst().id())
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(PriceUpdate.class)
+                .getResponseBody()
+                .doOnNext(price -> log.info("{}", price))
+                .as(StepVerifier::create)
+                .assertNext(p -> Assertions.assertEquals(54, p.price()))
+                .assertNext(p -> Assertions.assertEquals(55, p.price()))
+                .assertNext(p -> Assertions.assertEquals(53, p.price()))
+                .assertNext(p -> Assertions.assertEquals(54, p.price()))
+                .assertNext(p -> Assertions.assertEquals(55, p.price()))
+                .expectComplete()
+                .verify();
+    }
+
+    // Un precio con un time que no cabe en el buffer de reanudación (más allá de 2262) se publica igual, y al
+    // reanudar llega con su frame de siempre.
+    @Test
+    public void priceStreamFarFutureTime() {
+        // given
+        mockPriceStream("stock-service/stock-price-stream-far-future-200.jsonl");
+        var farFuture = new PriceUpdate(Ticker.GOOGLE, 54, LocalDateTime.parse("3000-01-01T00:00:00"));
+        var events = this.client.get()
+                .uri("/stock/price-stream")
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(new ParameterizedTypeReference<ServerSentEvent<PriceUpdate>>() {
+                })
+                .getResponseBody()
+                .collectList()
+                .block();
+        Assertions.assertEquals(3, events.size());
+        Assertions.assertEquals(farFuture, events.get(1).data());
+
+        // then
+        this.client.get()
+                .uri("/stock/price-stream?tickers=GOOGLE")
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .header("Last-Event-ID", events.getFirst().id())
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(PriceUpdate.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .assertNext(p -> Assertions.assertEquals(farFuture, p))
+                .assertNext(p -> Assertions.assertEquals(55, p.price()))
+                .thenCancel()
+                .verify();
+    }
+
+    private StepVerifier.FirstStep<PriceUpdate> getPriceStream(String uri) {
+        return this.client.get()
+                .uri(uri)
+                .accept(org.springframework.http.MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .returnResult(PriceUpdate.class)
+                .getResponseBody()
+                .doOnNext(price -> log.info("{}", price))
+                .as(StepVerifier::create);
+    }
+
 }
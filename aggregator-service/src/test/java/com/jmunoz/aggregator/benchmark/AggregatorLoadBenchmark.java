@@ -0,0 +1,41 @@
+package com.jmunoz.aggregator.benchmark;
+
+import com.jmunoz.aggregator.benchmark.loadtest.AggregatorProcess;
+import com.jmunoz.aggregator.benchmark.loadtest.DownstreamStubs;
+import com.jmunoz.aggregator.benchmark.loadtest.LoadGenerator;
+import com.jmunoz.aggregator.benchmark.loadtest.LoadTestConfig;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Prueba de carga del aggregator sin levantar customer-service ni stock-service:
+// stubs de los dos servicios (DownstreamStubs) y el generador de carga (LoadGenerator) en este proceso, y el
+// aggregator con sus properties de siempre apuntando a los stubs en otro (AggregatorProcess), para que la CPU, el
+// GC y el heap del informe sean solo suyos.
+// Deja el resultado en JSON en target/load-test-report.json (ver LoadTestConfig para cambiar la carga).
+//
+// No se ejecuta con los tests normales. Para ejecutarlo: ./mvnw test -Pbenchmark -Dtest=AggregatorLoadBenchmark
+public class AggregatorLoadBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(AggregatorLoadBenchmark.class);
+
+    @Test
+    public void load() throws IOException, InterruptedException {
+        var config = LoadTestConfig.fromSystemProperties();
+        var objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        log.info("load test: {}", config);
+
+        try (var stubs = new DownstreamStubs(objectMapper, config.stubLatency(), config.stubJitter(), config.pricePeriod());
+             var aggregator = new AggregatorProcess(stubs.baseUrl())) {
+            var report = new LoadGenerator(config, aggregator.baseUrl(), aggregator.handle()).run();
+
+            var path = Path.of(config.report());
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(path.toFile(), report);
+            log.info("load test report ({}): {}", path.toAbsolutePath(), report);
+        }
+    }
+}
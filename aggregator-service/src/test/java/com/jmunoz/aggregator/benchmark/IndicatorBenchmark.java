@@ -0,0 +1,101 @@
+package com.jmunoz.aggregator.benchmark;
+
+import com.jmunoz.aggregator.config.IndicatorProperties;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.service.TickerIndicators;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Coste por precio de actualizar los indicadores de un ticker (SMA 20 y 50, EMA 12 y 26, TWAP 1m y 5m),
+// y memoria reservada por precio una vez en marcha, que debe ser cero: todo el estado son arrays reservados al inicio.
+// La memoria se mide con los bytes reservados por el hilo (com.sun.management.ThreadMXBean).
+// Antes comprobamos los valores contra un cálculo a fuerza bruta.
+//
+// No se ejecuta con los tests normales. Para ejecutarlo: ./mvnw test -Pbenchmark
+public class IndicatorBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(IndicatorBenchmark.class);
+    private static final int WARM_UP_TICKS = 2_000_000;
+    private static final int TICKS = 10_000_000;
+    private static final IndicatorProperties PROPERTIES = new IndicatorProperties(List.of(20, 50), List.of(12, 26),
+            List.of(Duration.ofMinutes(1), Duration.ofMinutes(5)), 8192, Duration.ofSeconds(1), Duration.ofMinutes(1));
+
+    @Test
+    public void perTickCostAndAllocation() {
+        this.verify();
+
+        var indicators = new TickerIndicators(Ticker.GOOGLE, PROPERTIES);
+        var prices = new int[TICKS];
+        var times = new long[TICKS];
+        this.randomWalk(new SplittableRandom(42), prices, times);
+
+        for (int i = 0; i < WARM_UP_TICKS; i++) {
+            indicators.apply(prices[i], times[i]);
+        }
+
+        var threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var allocatedBefore = threadMXBean.getCurrentThreadAllocatedBytes();
+        var start = System.nanoTime();
+        for (int i = 0; i < TICKS; i++) {
+            indicators.apply(prices[i], times[i]);
+        }
+        var elapsed = System.nanoTime() - start;
+        var allocated = threadMXBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        log.info("indicators: {} ns per price update, {} bytes allocated in {} price updates",
+                String.format("%.1f", (double) elapsed / TICKS), allocated, TICKS);
+        // Margen para lo que reserve la propia JVM en el hilo (muy por debajo de un byte por precio).
+        Assertions.assertTrue(allocated < TICKS / 100, "steady state should not allocate");
+    }
+
+    // SMA(20) y TWAP(1m) contra el cálculo a fuerza bruta con todos los precios.
+    private void verify() {
+        var count = 20_000;
+        var prices = new int[count];
+        var times = new long[count];
+        this.randomWalk(new SplittableRandom(7), prices, times);
+        var indicators = new TickerIndicators(Ticker.GOOGLE, PROPERTIES);
+        for (int i = 0; i < count; i++) {
+            indicators.apply(prices[i], times[i]);
+        }
+        var snapshot = indicators.snapshot();
+
+        var sma = 0.0;
+        for (int i = count - 20; i < count; i++) {
+            sma += prices[i];
+        }
+        Assertions.assertEquals(sma / 20, snapshot.sma().get("20"), 1e-9);
+
+        var end = times[count - 1];
+        var windowStart = end - Duration.ofMinutes(1).toNanos();
+        var area = 0.0;
+        for (int i = 0; i < count - 1; i++) {
+            var from = Math.max(times[i], windowStart);
+            var to = times[i + 1];
+            if (to > from) {
+                area += (double) prices[i] * (to - from);
+            }
+        }
+        Assertions.assertEquals(area / (end - windowStart), snapshot.twap().get("1m"), 1e-6);
+        log.info("verified: sma(20)={} twap(1m)={}", snapshot.sma().get("20"), snapshot.twap().get("1m"));
+    }
+
+    // Precios en paseo aleatorio cada 10 a 200 ms.
+    private void randomWalk(SplittableRandom random, int[] prices, long[] times) {
+        var price = 10_000;
+        var time = 0L;
+        for (int i = 0; i < prices.length; i++) {
+            price = Math.max(1, price + random.nextInt(-5, 6));
+            time += random.nextLong(10_000_000, 200_000_001);
+            prices[i] = price;
+            times[i] = time;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.jmunoz.aggregator.benchmark;
+
+import com.jmunoz.aggregator.domain.OrderType;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
+import com.jmunoz.aggregator.dto.Order;
+import com.jmunoz.aggregator.dto.OrderRequest;
+import com.jmunoz.aggregator.service.OrderBook;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.SplittableRandom;
+
+// Coste de disparar las órdenes límite y stop con cada precio, con 1 millón de órdenes esperando en el libro
+// de un solo ticker (el peor caso). Los precios siguen un paseo aleatorio alrededor de 10000 y las órdenes
+// se reparten entre 9500 y 10500. Cada orden disparada se sustituye por otra nueva, así el libro no se vacía.
+// Comparamos con recorrer todas las órdenes en cada precio, que es lo que cuesta sin libro ordenado.
+//
+// No se ejecuta con los tests normales. Para ejecutarlo: ./mvnw test -Pbenchmark
+public class OrderBookBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderBookBenchmark.class);
+    private static final int RESTING_ORDERS = 1_000_000;
+    private static final int TICKS = 200_000;
+    private static final int MID_PRICE = 10_000;
+    private static final int SPREAD = 500;
+
+    private final OrderType[] types = OrderType.values();
+    private final TradeAction[] actions = TradeAction.values();
+    private long orderIds;
+
+    @Test
+    public void triggerWithMillionRestingOrders() {
+        var random = new SplittableRandom(42);
+        var book = new OrderBook();
+        for (int i = 0; i < RESTING_ORDERS; i++) {
+            book.add(this.order(random, MID_PRICE));
+        }
+
+        // warm up
+        this.run(book, random, TICKS / 4);
+
+        var result = this.run(book, random, TICKS);
+        log.info("order book: {} resting orders, {} ns per price update, {} orders triggered per price update",
+                book.size(), result.nanosPerTick(), String.format("%.2f", result.triggeredPerTick()));
+
+        // Referencia: mirar todas las órdenes en cada precio (solo unos pocos precios, es muy lento).
+        var orders = new Order[RESTING_ORDERS];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = this.order(random, MID_PRICE);
+        }
+        var scanTicks = 50;
+        var start = System.nanoTime();
+        var matches = 0L;
+        for (int i = 0; i < scanTicks; i++) {
+            var price = MID_PRICE - SPREAD + random.nextInt(2 * SPREAD);
+            for (var order : orders) {
+                var below = (order.type() == OrderType.LIMIT) == (order.action() == TradeAction.BUY);
+                if (below ? price <= order.price() : price >= order.price()) {
+                    matches++;
+                }
+            }
+        }
+        log.info("full scan: {} ns per price update ({} matches)", (System.nanoTime() - start) / scanTicks, matches);
+    }
+
+    private Result run(OrderBook book, SplittableRandom random, int ticks) {
+        var price = MID_PRICE;
+        var triggered = 0L;
+        var elapsed = 0L;
+        for (int i = 0; i < ticks; i++) {
+            price = Math.clamp(price + random.nextInt(-5, 6), MID_PRICE - SPREAD + 1, MID_PRICE + SPREAD - 1);
+            var start = System.nanoTime();
+            var orders = book.trigger(price);
+            elapsed += System.nanoTime() - start;
+            triggered += orders.size();
+            // Sustituimos las disparadas, fuera de la medida.
+            for (int j = 0; j < orders.size(); j++) {
+                book.add(this.order(random, price));
+            }
+        }
+        return new Result(elapsed / ticks, (double) triggered / ticks);
+    }
+
+    // Una orden que no se dispara con el precio actual: las que esperan a que baje, por debajo, y al revés.
+    private Order order(SplittableRandom random, int price) {
+        var type = this.types[random.nextInt(this.types.length)];
+        var action = this.actions[random.nextInt(this.actions.length)];
+        var below = (type == OrderType.LIMIT) == (action == TradeAction.BUY);
+        var limit = below
+                ? random.nextInt(MID_PRICE - SPREAD, price)
+                : random.nextInt(price + 1, MID_PRICE + SPREAD + 1);
+        var request = new OrderRequest(Ticker.GOOGLE, action, 1, type, limit);
+        return Order.open(++this.orderIds, 1, request);
+    }
+
+    private record Result(long nanosPerTick,
+                          double triggeredPerTick) {
+    }
+}
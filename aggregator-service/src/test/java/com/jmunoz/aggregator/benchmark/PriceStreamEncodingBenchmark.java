@@ -0,0 +1,93 @@
+package com.jmunoz.aggregator.benchmark;
+
+import com.jmunoz.aggregator.codec.PriceUpdateFrames;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.codec.ServerSentEventHttpMessageWriter;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+// Compara el stream de precios en SSE con JSON frente a los frames binarios (PriceUpdateFrames):
+// bytes en la red por precio y CPU de codificación por precio para 1000 subscribers.
+// Como en el servidor, los frames binarios se codifican una vez por precio y cada subscriber escribe en su
+// respuesta un buffer de solo lectura que envuelve esos bytes.
+//
+// No se ejecuta con los tests normales. Para ejecutarlo: ./mvnw test -Pbenchmark
+public class PriceStreamEncodingBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(PriceStreamEncodingBenchmark.class);
+    private static final int SUBSCRIBERS = 1_000;
+    private static final int TICKS = 100;
+    private static final ResolvableType PRICE_UPDATE_TYPE = ResolvableType.forClass(PriceUpdate.class);
+
+    private final List<PriceUpdate> ticks = IntStream.range(0, TICKS)
+            .mapToObj(i -> new PriceUpdate(Ticker.values()[i % Ticker.values().length], 50 + i, LocalDateTime.now().plusSeconds(i)))
+            .toList();
+
+    @Test
+    public void sseJsonVersusBinaryFrames() {
+        var frames = this.ticks.stream().map(PriceUpdateFrames::encode).toList();
+        var sse = new ServerSentEventHttpMessageWriter(new Jackson2JsonEncoder(Jackson2ObjectMapperBuilder.json().build()));
+        Consumer<MockServerHttpResponse> sseJson = response -> write(sse, MediaType.TEXT_EVENT_STREAM, response);
+        Consumer<MockServerHttpResponse> binaryFrames = response -> response.writeAndFlushWith(Flux.fromIterable(frames)
+                        .map(frame -> Mono.just(response.bufferFactory().wrap(ByteBuffer.wrap(frame).asReadOnlyBuffer()))))
+                .block();
+
+        // warm up
+        run(sseJson);
+        run(binaryFrames);
+
+        report("sse-json", run(sseJson));
+        report("binary-frame", run(binaryFrames));
+    }
+
+    private Result run(Consumer<MockServerHttpResponse> writer) {
+        var threadMXBean = ManagementFactory.getThreadMXBean();
+        var bytes = 0L;
+        var start = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            var response = new MockServerHttpResponse();
+            writer.accept(response);
+            bytes += response.getBody()
+                    .map(DataBuffer::readableByteCount)
+                    .reduce(0L, Long::sum)
+                    .block();
+        }
+        var cpu = threadMXBean.getCurrentThreadCpuTime() - start;
+        return new Result(bytes / (SUBSCRIBERS * TICKS), cpu / TICKS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write(HttpMessageWriter<?> writer, MediaType mediaType, MockServerHttpResponse response) {
+        ((HttpMessageWriter<PriceUpdate>) writer)
+                .write(Flux.fromIterable(this.ticks), PRICE_UPDATE_TYPE, mediaType, response, Map.of())
+                .block();
+    }
+
+    private void report(String name, Result result) {
+        log.info("{}: {} bytes per price update, {} us encode CPU per price update for {} subscribers",
+                name, result.bytesPerUpdate(), result.cpuNanosPerTick() / 1_000, SUBSCRIBERS);
+    }
+
+    private record Result(long bytesPerUpdate,
+                          long cpuNanosPerTick) {
+    }
+}
@@ -0,0 +1,71 @@
+package com.jmunoz.aggregator.benchmark;
+
+import com.jmunoz.aggregator.codec.PriceUpdateSseFrames;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.dto.PriceEvent;
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEventHttpMessageWriter;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+// CPU por precio del fan-out SSE según el número de subscribers:
+//   - jackson-per-subscriber: antes, el writer de SSE serializa el precio para cada subscriber.
+//   - shared-frame: ahora, el hub codifica el frame una vez al publicar (PriceUpdateSseFrames) y se comparte.
+// Cada precio es una instancia nueva, como cuando llega del hub, y se escribe en todas las respuestas.
+//
+// No se ejecuta con los tests normales. Para ejecutarlo: ./mvnw test -Pbenchmark
+public class SseFanOutBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(SseFanOutBenchmark.class);
+    private static final int[] SUBSCRIBERS = {100, 1_000, 5_000};
+    private static final int TICKS = 20;
+
+    @Test
+    public void cpuPerTickBySubscriberCount() {
+        var objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        var sse = new ServerSentEventHttpMessageWriter(new Jackson2JsonEncoder(objectMapper));
+        var frames = new PriceUpdateSseFrames(objectMapper);
+
+        BiConsumer<PriceEvent, MockServerHttpResponse> perSubscriber = (event, response) ->
+                sse.write(Mono.just(event.priceUpdate()), ResolvableType.forClass(PriceUpdate.class), MediaType.TEXT_EVENT_STREAM, response, Map.of())
+                        .block();
+        BiConsumer<PriceEvent, MockServerHttpResponse> shared = (event, response) ->
+                response.writeAndFlushWith(Mono.just(Mono.just(PriceUpdateSseFrames.frame(event, response.bufferFactory()))))
+                        .block();
+
+        // warm up
+        run(perSubscriber, frames, 1_000);
+        run(shared, frames, 1_000);
+
+        for (var subscribers : SUBSCRIBERS) {
+            log.info("{} subscribers: jackson-per-subscriber {} us/tick, shared-frame {} us/tick",
+                    subscribers, run(perSubscriber, frames, subscribers) / 1_000, run(shared, frames, subscribers) / 1_000);
+        }
+    }
+
+    // CPU (ns) por precio, incluida la codificación que hace el hub al publicarlo.
+    private long run(BiConsumer<PriceEvent, MockServerHttpResponse> writer, PriceUpdateSseFrames frames, int subscribers) {
+        var threadMXBean = ManagementFactory.getThreadMXBean();
+        var start = threadMXBean.getCurrentThreadCpuTime();
+        for (int tick = 0; tick < TICKS; tick++) {
+            var priceUpdate = new PriceUpdate(Ticker.GOOGLE, 50 + tick, LocalDateTime.now());
+            var event = new PriceEvent(tick, priceUpdate, frames.encode(tick, priceUpdate), null, null);
+            for (int i = 0; i < subscribers; i++) {
+                writer.accept(event, new MockServerHttpResponse());
+            }
+        }
+        return (threadMXBean.getCurrentThreadCpuTime() - start) / TICKS;
+    }
+}
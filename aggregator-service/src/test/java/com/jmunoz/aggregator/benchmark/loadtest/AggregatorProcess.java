@@ -0,0 +1,78 @@
+package com.jmunoz.aggregator.benchmark.loadtest;
+
+import com.jmunoz.aggregator.AggregatorServiceApplication;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// El aggregator en su propio proceso (otra JVM con el mismo classpath), con sus properties de siempre apuntando a
+// los stubs. Así la CPU, el GC y el heap que mide LoadGenerator son solo los del aggregator, sin los stubs ni el
+// propio generador de carga.
+public class AggregatorProcess implements AutoCloseable {
+
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+
+    private final Process process;
+    private final String baseUrl;
+
+    public AggregatorProcess(String downstreamBaseUrl) {
+        var port = freePort();
+        this.baseUrl = "http://127.0.0.1:" + port;
+        var command = new ArrayList<>(List.of(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                AggregatorServiceApplication.class.getName(),
+                "--server.port=" + port,
+                "--customer.service.url=" + downstreamBaseUrl,
+                "--stock.service.url=" + downstreamBaseUrl));
+        try {
+            this.process = new ProcessBuilder(command).inheritIO().start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.awaitStarted();
+    }
+
+    public String baseUrl() {
+        return this.baseUrl;
+    }
+
+    public ProcessHandle handle() {
+        return this.process.toHandle();
+    }
+
+    // Arrancado cuando /actuator/health responde (con el estado que sea).
+    private void awaitStarted() {
+        WebClient.create(this.baseUrl)
+                .get()
+                .uri("/actuator/health")
+                .exchangeToMono(response -> response.releaseBody())
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, Duration.ofMillis(200))
+                        .filter(ex -> this.process.isAlive()))
+                .block(STARTUP_TIMEOUT);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        this.process.destroy();
+        if (!this.process.waitFor(10, TimeUnit.SECONDS)) {
+            this.process.destroyForcibly();
+        }
+    }
+
+    private static int freePort() {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.jmunoz.aggregator.benchmark.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jmunoz.aggregator.domain.Ticker;
+import com.jmunoz.aggregator.domain.TradeAction;
+import com.jmunoz.aggregator.dto.*;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import org.springframework.http.MediaType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Stubs de customer-service y stock-service en el mismo proceso (Reactor Netty), para la prueba de carga
+// sin necesitar los jars de los servicios ni red: escuchan en 127.0.0.1 en un puerto libre.
+//
+//   GET  /stock/price-stream          NDJSON, un precio de un ticker al azar cada pricePeriod.
+//   GET  /stock/{ticker}
+//   GET  /customers/{id}
+//   POST /customers/{id}/trade        Siempre acepta el trade.
+//
+// Cada respuesta (salvo el stream) tarda latency + [0, jitter).
+public class DownstreamStubs implements AutoCloseable {
+
+    private static final Ticker[] TICKERS = Ticker.values();
+    private static final TradeAction[] ACTIONS = TradeAction.values();
+
+    private final ObjectMapper objectMapper;
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final Flux<String> priceStream;
+    private final DisposableServer server;
+
+    public DownstreamStubs(ObjectMapper objectMapper, Duration latency, Duration jitter, Duration pricePeriod) {
+        this.objectMapper = objectMapper;
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+        // Hot: todas las conexiones reciben los mismos precios.
+        this.priceStream = Flux.interval(pricePeriod)
+                .onBackpressureDrop()
+                .map(i -> this.json(new PriceUpdate(randomTicker(), randomPrice(), LocalDateTime.now())) + "\n")
+                .share();
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes
+                        .get("/stock/price-stream", this::priceStream)
+                        .get("/stock/{ticker}", this::stockPrice)
+                        .get("/customers/{customerId}", this::customerInformation)
+                        .post("/customers/{customerId}/trade", this::trade))
+                .bindNow();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + this.server.port();
+    }
+
+    @Override
+    public void close() {
+        this.server.disposeNow();
+    }
+
+    private Mono<Void> priceStream(HttpServerRequest request, HttpServerResponse response) {
+        return response.header(HttpHeaderNames.CONTENT_TYPE, MediaType.APPLICATION_NDJSON_VALUE)
+                .sendString(this.priceStream)
+                .then();
+    }
+
+    private Mono<Void> stockPrice(HttpServerRequest request, HttpServerResponse response) {
+        var ticker = Ticker.valueOf(request.param("ticker"));
+        return this.respond(response, Mono.just(new StockPriceResponse(ticker, randomPrice())));
+    }
+
+    private Mono<Void> customerInformation(HttpServerRequest request, HttpServerResponse response) {
+        var customerId = Integer.valueOf(request.param("customerId"));
+        var holdings = List.of(new Holding(Ticker.GOOGLE, 10), new Holding(Ticker.APPLE, 5));
+        return this.respond(response, Mono.just(new CustomerInformation(customerId, "customer-" + customerId, 10_000, holdings)));
+    }
+
+    private Mono<Void> trade(HttpServerRequest request, HttpServerResponse response) {
+        var customerId = Integer.valueOf(request.param("customerId"));
+        var tradeResponse = request.receive()
+                .aggregate()
+                .asString()
+                .map(body -> this.read(body, StockTradeRequest.class))
+                .map(req -> new StockTradeResponse(customerId, req.ticker(), req.price(), req.quantity(), req.action(),
+                        req.price() * req.quantity(), 10_000));
+        return this.respond(response, tradeResponse);
+    }
+
+    private Mono<Void> respond(HttpServerResponse response, Mono<?> body) {
+        var delay = this.latencyNanos + (this.jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(this.jitterNanos) : 0);
+        return response.header(HttpHeaderNames.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .sendString(body.map(this::json).delayElement(Duration.ofNanos(delay)))
+                .then();
+    }
+
+    private String json(Object value) {
+        try {
+            return this.objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T read(String json, Class<T> type) {
+        try {
+            return this.objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Ticker randomTicker() {
+        return TICKERS[ThreadLocalRandom.current().nextInt(TICKERS.length)];
+    }
+
+    static TradeAction randomAction() {
+        return ACTIONS[ThreadLocalRandom.current().nextInt(ACTIONS.length)];
+    }
+
+    private static int randomPrice() {
+        return ThreadLocalRandom.current().nextInt(50, 150);
+    }
+}
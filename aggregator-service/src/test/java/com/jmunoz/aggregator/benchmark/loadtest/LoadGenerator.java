@@ -0,0 +1,266 @@
+package com.jmunoz.aggregator.benchmark.loadtest;
+
+import com.jmunoz.aggregator.dto.PriceUpdate;
+import com.jmunoz.aggregator.dto.TradeRequest;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Generador de carga contra el aggregator:
+// - sseSubscribers conexiones a /stock/price-stream durante toda la prueba.
+// - rate peticiones por segundo a ritmo fijo (modelo abierto): cada TICK lanza las que le tocan, sin esperar
+//   a que terminen las anteriores. Así, si el aggregator se atasca, las peticiones se acumulan como en producción.
+//
+// La latencia se mide desde el instante en que debía salir la petición (no desde que sale), para no ocultar
+// el tiempo de espera cuando el generador o el aggregator van con retraso (coordinated omission).
+//
+// CPU, GC y heap son solo los del proceso del aggregator (ver AggregatorProcess): la CPU del sistema operativo
+// (ProcessHandle) y el GC y el heap de sus métricas de /actuator/metrics.
+public class LoadGenerator {
+
+    private static final long TICK_MILLIS = 10;
+
+    private final LoadTestConfig config;
+    private final ProcessHandle aggregator;
+    private final WebClient client;
+    private final ConnectionProvider connectionProvider;
+
+    private final Operation trades = new Operation();
+    private final Operation customerInformation = new Operation();
+    private final Operation priceLag = new Operation();
+    private final AtomicLong priceEvents = new AtomicLong();
+    private final AtomicLong priceErrors = new AtomicLong();
+
+    public LoadGenerator(LoadTestConfig config, String baseUrl, ProcessHandle aggregator) {
+        this.config = config;
+        this.aggregator = aggregator;
+        // Sin límite práctico de conexiones ni de peticiones en espera: el cuello de botella debe ser el aggregator.
+        this.connectionProvider = ConnectionProvider.builder("load-generator")
+                .maxConnections(10_000)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.client = WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(this.connectionProvider)))
+                .build();
+    }
+
+    public LoadTestReport run() {
+        var subscribers = this.subscribePriceStream();
+        try {
+            // warm up
+            this.generate(this.config.warmup());
+            this.reset();
+
+            var cpu = new CpuSampler(this.aggregator, this.client);
+            var heap = new HeapSampler(this.client);
+            var start = System.nanoTime();
+            this.generate(this.config.duration());
+            var seconds = (System.nanoTime() - start) / 1e9;
+
+            var operations = new LinkedHashMap<String, LoadTestReport.Operation>();
+            operations.put("trade", this.trades.result(seconds));
+            operations.put("customer-information", this.customerInformation.result(seconds));
+            var priceStream = new LoadTestReport.PriceStream(this.config.sseSubscribers(), this.priceEvents.get(),
+                    this.priceEvents.get() / seconds, this.priceErrors.get(), this.priceLag.result(seconds));
+            return new LoadTestReport(this.config, seconds, operations, priceStream, cpu.result(seconds), heap.result());
+        } finally {
+            subscribers.dispose();
+            this.connectionProvider.dispose();
+        }
+    }
+
+    private Disposable subscribePriceStream() {
+        var subscribers = Disposables.composite();
+        for (int i = 0; i < this.config.sseSubscribers(); i++) {
+            subscribers.add(this.client.get()
+                    .uri("/stock/price-stream")
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .retrieve()
+                    .bodyToFlux(PriceUpdate.class)
+                    .subscribe(this::priceReceived, ex -> this.priceErrors.incrementAndGet()));
+        }
+        return subscribers;
+    }
+
+    private void priceReceived(PriceUpdate priceUpdate) {
+        this.priceEvents.incrementAndGet();
+        this.priceLag.success(Duration.between(priceUpdate.time(), LocalDateTime.now()).toNanos());
+    }
+
+    private void generate(Duration duration) {
+        var ticks = duration.toMillis() / TICK_MILLIS;
+        var perTick = this.config.rate() * TICK_MILLIS / 1000.0;
+        var start = System.nanoTime();
+        Flux.interval(Duration.ofMillis(TICK_MILLIS))
+                .take(ticks)
+                .onBackpressureBuffer()
+                .flatMapIterable(tick -> {
+                    var intendedStart = start + TimeUnit.MILLISECONDS.toNanos(tick * TICK_MILLIS);
+                    var requests = (int) (Math.floor((tick + 1) * perTick) - Math.floor(tick * perTick));
+                    return Collections.nCopies(requests, intendedStart);
+                })
+                .flatMap(this::request, Integer.MAX_VALUE)
+                .then()
+                .block(duration.plusSeconds(60));
+    }
+
+    private Mono<Void> request(long intendedStart) {
+        var random = ThreadLocalRandom.current();
+        var customerId = random.nextInt(1, this.config.customers() + 1);
+        var trade = random.nextDouble() < this.config.tradeRatio();
+        var operation = trade ? this.trades : this.customerInformation;
+        var request = trade
+                ? this.client.post()
+                .uri("/customers/{customerId}/trade", customerId)
+                .bodyValue(new TradeRequest(DownstreamStubs.randomTicker(), DownstreamStubs.randomAction(), 1))
+                .retrieve()
+                .toBodilessEntity()
+                : this.client.get()
+                .uri("/customers/{customerId}", customerId)
+                .retrieve()
+                .toBodilessEntity();
+        return request
+                .doOnSuccess(r -> operation.success(System.nanoTime() - intendedStart))
+                .doOnError(ex -> operation.error())
+                .onErrorResume(ex -> Mono.empty())
+                .then();
+    }
+
+    private void reset() {
+        this.trades.reset();
+        this.customerInformation.reset();
+        this.priceLag.reset();
+        this.priceEvents.set(0);
+        this.priceErrors.set(0);
+    }
+
+    // Latencias en microsegundos (HdrHistogram, 3 cifras significativas).
+    private static class Operation {
+
+        private final Recorder latencies = new Recorder(3);
+        private final AtomicLong errors = new AtomicLong();
+
+        void success(long nanos) {
+            this.latencies.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        }
+
+        void error() {
+            this.errors.incrementAndGet();
+        }
+
+        void reset() {
+            this.latencies.reset();
+            this.errors.set(0);
+        }
+
+        LoadTestReport.Operation result(double seconds) {
+            Histogram histogram = this.latencies.getIntervalHistogram();
+            var count = histogram.getTotalCount();
+            return new LoadTestReport.Operation(count, this.errors.get(), count / seconds,
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                    histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+        }
+    }
+
+    // Medida de /actuator/metrics/{name} del aggregator, 0 si aún no existe (jvm.gc.pause hasta la primera pausa).
+    private static Mono<Double> metric(WebClient client, String name, String tag, String statistic) {
+        return client.get()
+                .uri(uriBuilder -> uriBuilder.path("/actuator/metrics/{name}").queryParamIfPresent("tag", Optional.ofNullable(tag)).build(name))
+                .retrieve()
+                .bodyToMono(Metric.class)
+                .map(metric -> metric.measurements().stream()
+                        .filter(m -> m.statistic().equals(statistic))
+                        .mapToDouble(Measurement::value)
+                        .sum())
+                .onErrorResume(WebClientResponseException.NotFound.class, ex -> Mono.just(0.0));
+    }
+
+    private record Metric(List<Measurement> measurements) {
+    }
+
+    private record Measurement(String statistic,
+                               double value) {
+    }
+
+    // CPU del proceso del aggregator y sus pausas de GC durante la prueba.
+    private static class CpuSampler {
+
+        private final ProcessHandle aggregator;
+        private final WebClient client;
+        private final Duration cpuStart;
+        private final double gcCountStart;
+        private final double gcSecondsStart;
+
+        CpuSampler(ProcessHandle aggregator, WebClient client) {
+            this.aggregator = aggregator;
+            this.client = client;
+            this.cpuStart = cpuTime(aggregator);
+            this.gcCountStart = gcPauses(client, "COUNT");
+            this.gcSecondsStart = gcPauses(client, "TOTAL_TIME");
+        }
+
+        LoadTestReport.Cpu result(double seconds) {
+            var processors = Runtime.getRuntime().availableProcessors();
+            var cpuSeconds = cpuTime(this.aggregator).minus(this.cpuStart).toNanos() / 1e9;
+            return new LoadTestReport.Cpu(processors, cpuSeconds, cpuSeconds / seconds / processors,
+                    Math.round(gcPauses(this.client, "COUNT") - this.gcCountStart),
+                    Math.round((gcPauses(this.client, "TOTAL_TIME") - this.gcSecondsStart) * 1000));
+        }
+
+        private static Duration cpuTime(ProcessHandle aggregator) {
+            return aggregator.info().totalCpuDuration()
+                    .orElseThrow(() -> new IllegalStateException("CPU time of the aggregator process is not available"));
+        }
+
+        private static double gcPauses(WebClient client, String statistic) {
+            return metric(client, "jvm.gc.pause", null, statistic).block();
+        }
+    }
+
+    // Pico de heap usado por el aggregator, muestreado cada 100 ms.
+    private static class HeapSampler {
+
+        private final WebClient client;
+        private final AtomicLong peak = new AtomicLong();
+        private final Disposable sampling;
+
+        HeapSampler(WebClient client) {
+            this.client = client;
+            this.sampling = Flux.interval(Duration.ofMillis(100))
+                    .onBackpressureDrop()
+                    .concatMap(i -> this.used())
+                    .subscribe(used -> this.peak.accumulateAndGet(used, Math::max));
+        }
+
+        LoadTestReport.Heap result() {
+            this.sampling.dispose();
+            var used = this.used().block();
+            var max = metric(this.client, "jvm.memory.max", "area:heap", "VALUE").block();
+            return new LoadTestReport.Heap(max.longValue(), Math.max(this.peak.get(), used), used);
+        }
+
+        private Mono<Long> used() {
+            return metric(this.client, "jvm.memory.used", "area:heap", "VALUE").map(Double::longValue);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.jmunoz.aggregator.benchmark.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+
+// Configuración de la prueba de carga. Se puede cambiar con system properties, por ejemplo:
+//   ./mvnw test -Pbenchmark -Dtest=AggregatorLoadBenchmark -Dload.rate=2000 -Dload.sse-subscribers=1000
+//
+// - rate: peticiones por segundo (trades + lecturas de clientes), a ritmo fijo (no espera a las respuestas).
+// - tradeRatio: fracción de las peticiones que son trades. El resto son GET /customers/{id}.
+// - customers: los ids de cliente se eligen al azar entre 1 y customers.
+// - sseSubscribers: subscribers de /stock/price-stream durante toda la prueba.
+// - stubLatency y stubJitter: latencia de los stubs de customer-service y stock-service (latency + [0, jitter)).
+// - pricePeriod: cada cuánto emite un precio el stub de /stock/price-stream.
+public record LoadTestConfig(int rate,
+                             double tradeRatio,
+                             int customers,
+                             int sseSubscribers,
+                             Duration warmup,
+                             Duration duration,
+                             Duration stubLatency,
+                             Duration stubJitter,
+                             Duration pricePeriod,
+                             String report) {
+
+    public static LoadTestConfig fromSystemProperties() {
+        return new LoadTestConfig(
+                Integer.getInteger("load.rate", 500),
+                Double.parseDouble(System.getProperty("load.trade-ratio", "0.3")),
+                Integer.getInteger("load.customers", 1000),
+                Integer.getInteger("load.sse-subscribers", 100),
+                duration("load.warmup", "5s"),
+                duration("load.duration", "20s"),
+                duration("load.stub.latency", "5ms"),
+                duration("load.stub.jitter", "5ms"),
+                duration("load.price-period", "10ms"),
+                System.getProperty("load.report", "target/load-test-report.json")
+        );
+    }
+
+    private static Duration duration(String property, String defaultValue) {
+        return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+    }
+}
@@ -0,0 +1,43 @@
+package com.jmunoz.aggregator.benchmark.loadtest;
+
+import java.util.Map;
+
+// Resultado de la prueba de carga, que se guarda como JSON (LoadTestConfig.report).
+// Las latencias van en microsegundos. CPU, GC y heap son solo del proceso del aggregator (ver AggregatorProcess).
+public record LoadTestReport(LoadTestConfig config,
+                             double seconds,
+                             Map<String, Operation> operations,
+                             PriceStream priceStream,
+                             Cpu cpu,
+                             Heap heap) {
+
+    public record Operation(long count,
+                            long errors,
+                            double throughput,
+                            long p50Micros,
+                            long p99Micros,
+                            long p999Micros,
+                            long maxMicros) {
+    }
+
+    // lag: desde que el stub emite el precio hasta que lo recibe cada subscriber.
+    public record PriceStream(int subscribers,
+                              long events,
+                              double eventsPerSecond,
+                              long errors,
+                              Operation lag) {
+    }
+
+    // gcCount y gcMillis: pausas de GC (jvm.gc.pause), sin los ciclos concurrentes.
+    public record Cpu(int availableProcessors,
+                      double processCpuSeconds,
+                      double averageLoad,
+                      long gcCount,
+                      long gcMillis) {
+    }
+
+    public record Heap(long maxBytes,
+                       long peakUsedBytes,
+                       long usedAtEndBytes) {
+    }
+}
@@ -5,9 +5,13 @@ import com.jmunoz.customerportfolio.dto.StockTradeRequest;
 import com.jmunoz.customerportfolio.dto.StockTradeResponse;
 import com.jmunoz.customerportfolio.service.CustomerService;
 import com.jmunoz.customerportfolio.service.TradeService;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("customers")
 public class CustomerController {
@@ -25,6 +29,18 @@ public class CustomerController {
         return this.customerService.getCustomerInformation(customerId);
     }
 
+    // Varios clientes de una vez: GET /customers?ids=1,2,3
+    @GetMapping(params = "ids", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<CustomerInformation> getCustomersInformation(@RequestParam List<Integer> ids) {
+        return this.customerService.getCustomersInformation(ids);
+    }
+
+    // Lo mismo, con los ids en el body (un array JSON), cuando son demasiados para la URL.
+    @PostMapping(value = "/search", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<CustomerInformation> searchCustomersInformation(@RequestBody Mono<List<Integer>> idsMono) {
+        return idsMono.flatMapMany(this.customerService::getCustomersInformation);
+    }
+
     @PostMapping("/{customerId}/trade")
     public Mono<StockTradeResponse> trade(@PathVariable Integer customerId, @RequestBody Mono<StockTradeRequest> requestMono) {
         return requestMono.flatMap(req -> this.tradeService.trade(customerId, req));
@@ -7,10 +7,15 @@ import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 @Repository
 public interface PortfolioItemRepository extends ReactiveCrudRepository<PortfolioItem, Integer> {
 
     Flux<PortfolioItem> findAllByCustomerId(Integer customerId);
 
+    // Una sola query (customer_id IN (...)) para las acciones de varios clientes.
+    Flux<PortfolioItem> findAllByCustomerIdIn(Collection<Integer> customerIds);
+
     Mono<PortfolioItem> findByCustomerIdAndTicker(Integer customerId, Ticker ticker);
 }
@@ -2,13 +2,17 @@ package com.jmunoz.customerportfolio.service;
 
 import com.jmunoz.customerportfolio.dto.CustomerInformation;
 import com.jmunoz.customerportfolio.entity.Customer;
+import com.jmunoz.customerportfolio.entity.PortfolioItem;
 import com.jmunoz.customerportfolio.exceptions.ApplicationExceptions;
 import com.jmunoz.customerportfolio.mapper.EntityDtoMapper;
 import com.jmunoz.customerportfolio.repository.CustomerRepository;
 import com.jmunoz.customerportfolio.repository.PortfolioItemRepository;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Service
 public class CustomerService {
 
@@ -26,6 +30,20 @@ public class CustomerService {
                 .flatMap(this::buildCustomerInformation);
     }
 
+    // Información de varios clientes con dos queries en total (en vez de dos por cliente):
+    // una para las acciones de todos los clientes, que agrupamos en memoria, y otra para los clientes (id IN (...)).
+    // Los ids que no existen simplemente no aparecen en el resultado.
+    public Flux<CustomerInformation> getCustomersInformation(List<Integer> customerIds) {
+        if (customerIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return this.portfolioItemRepository.findAllByCustomerIdIn(customerIds)
+                .collectMultimap(PortfolioItem::getCustomerId)
+                .flatMapMany(items -> this.customerRepository.findAllById(customerIds)
+                        .map(customer -> EntityDtoMapper.toCustomerInformation(customer,
+                                List.copyOf(items.getOrDefault(customer.getId(), List.of())))));
+    }
+
     private Mono<CustomerInformation> buildCustomerInformation(Customer customer) {
         // Si no se encuentra nada se devuelve una lista vacía, lo que es correcto.
         return this.portfolioItemRepository.findAllByCustomerId(customer.getId())
@@ -2,7 +2,9 @@ package com.jmunoz.customerportfolio;
 
 import com.jmunoz.customerportfolio.domain.Ticker;
 import com.jmunoz.customerportfolio.domain.TradeAction;
+import com.jmunoz.customerportfolio.dto.CustomerInformation;
 import com.jmunoz.customerportfolio.dto.StockTradeRequest;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -10,9 +12,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
 
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 @SpringBootTest
 @AutoConfigureWebTestClient
@@ -31,6 +37,36 @@ class CustomerServiceApplicationTests {
                 .jsonPath("$.holdings").isEmpty();
     }
 
+    // Los ids que no existen no aparecen en el resultado.
+    @Test
+    public void customersInformation() {
+        this.client.get()
+                .uri("/customers?ids=1,3,10")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(CustomerInformation.class)
+                .getResponseBody()
+                .doOnNext(c -> log.info("{}", c))
+                .map(CustomerInformation::name)
+                .collectList()
+                .as(StepVerifier::create)
+                .assertNext(names -> Assertions.assertEquals(Set.of("Sam", "John"), Set.copyOf(names)))
+                .verifyComplete();
+
+        this.client.post()
+                .uri("/customers/search")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(List.of(2))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(CustomerInformation.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .assertNext(c -> Assertions.assertEquals("Mike", c.name()))
+                .verifyComplete();
+    }
+
     @Test
     public void buyAndSell() {
         // buy